@@ -0,0 +1,237 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * UxfAsyncOutputWriter. A UxfOutputWriter whose writes are queued and done by
+ * background threads (see --write-threads), so generating threads do not wait
+ * for the file system. The queues are bounded: when the writers fall behind,
+ * write() blocks until there is room. All writes of one file go through the
+ * same thread, in the order they were queued, so the last write of a file wins.
+ * Failed writes are thrown by flush() or close().
+ *
+ */
+public class UxfAsyncOutputWriter extends UxfOutputWriter {
+
+    /**
+     * Writes queued per thread before write() blocks.
+     */
+    public static final int QUEUE_CAPACITY = 64;
+
+    /**
+     * A queued write, or a marker to wait for.
+     */
+    private static class Task {
+
+        /** The file, null for a marker. */
+        final File _file;
+
+        /** The content. */
+        final byte[] _content;
+
+        /** Counted down when a marker is reached. */
+        final CountDownLatch _done;
+
+        Task(File file_, byte[] content_, CountDownLatch done_) {
+            _file = file_;
+            _content = content_;
+            _done = done_;
+        }
+    }
+
+    /**
+     * The _queues, one per thread.
+     */
+    private final List<BlockingQueue<Task>> _queues = new ArrayList<BlockingQueue<Task>>();
+
+    /**
+     * The _failures of background writes since the last flush.
+     */
+    private final List<IOException> _failures = new ArrayList<IOException>();
+
+    /**
+     * The _closed flag.
+     */
+    private volatile boolean _closed = false;
+
+    /**
+     * UxfAsyncOutputWriter constructor.
+     *
+     * @param threads_
+     *            the number of writing threads
+     */
+    public UxfAsyncOutputWriter(int threads_) {
+        for (int x = 0; x < Math.max(1, threads_); x++) {
+            final BlockingQueue<Task> queue = new ArrayBlockingQueue<Task>(QUEUE_CAPACITY);
+            _queues.add(queue);
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    drain(queue);
+                }
+            }, "uxf-writer-" + x);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+
+    /**
+     * Queue content to be written to a file, unless the file already holds exactly this content.
+     *
+     * @param file_
+     *            the target file
+     * @param content_
+     *            the new content, from position to limit (position is not changed)
+     * @return QUEUED
+     * @throws IOException
+     *             if the writer is closed
+     * @see com.freedom2020llc.utils.uxfparser.UxfOutputWriter#write(java.io.File, java.nio.ByteBuffer)
+     */
+    public Result write(File file_, ByteBuffer content_) throws IOException {
+        if (_closed) {
+            throw new IOException("Writer is closed, cannot write " + file_);
+        }
+
+        // The caller reuses its buffer
+        byte[] content = new byte[content_.remaining()];
+        content_.duplicate().get(content);
+        int queue = (file_.getAbsolutePath().hashCode() & Integer.MAX_VALUE) % _queues.size();
+        put(_queues.get(queue), new Task(file_, content, null));
+        return Result.QUEUED;
+    }
+
+
+    /**
+     * Wait until every queued write is done.
+     *
+     * @throws IOException
+     *             the first failed write since the last flush, the others added as suppressed
+     * @see com.freedom2020llc.utils.uxfparser.UxfOutputWriter#flush()
+     */
+    public void flush() throws IOException {
+        if (!_closed) {
+            CountDownLatch done = new CountDownLatch(_queues.size());
+            for (BlockingQueue<Task> queue : _queues) {
+                put(queue, new Task(null, null, done));
+            }
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while writing", e);
+            }
+        }
+        IOException failure = null;
+        synchronized (_failures) {
+            for (IOException e : _failures) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+            _failures.clear();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+
+    /**
+     * Wait for every queued write, stop the threads and sync if asked.
+     *
+     * @throws IOException
+     *             if a write or the sync failed
+     * @see com.freedom2020llc.utils.uxfparser.UxfOutputWriter#close()
+     */
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            if (!_closed) {
+                _closed = true;
+                for (BlockingQueue<Task> queue : _queues) {
+                    put(queue, new Task(null, null, null));
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Queue a task, waiting for room.
+     *
+     * @param queue_
+     *            the queue
+     * @param task_
+     *            the task
+     * @throws IOException
+     *             if interrupted while waiting
+     */
+    private static void put(BlockingQueue<Task> queue_, Task task_) throws IOException {
+        try {
+            queue_.put(task_);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while queueing " + task_._file, e);
+        }
+    }
+
+
+    /**
+     * Write the tasks of one queue until stopped.
+     *
+     * @param queue_
+     *            the queue
+     */
+    private void drain(BlockingQueue<Task> queue_) {
+        while (true) {
+            Task task;
+            try {
+                task = queue_.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (task._file == null) {
+                if (task._done == null) {
+                    return;
+                }
+                task._done.countDown();
+                continue;
+            }
+            try {
+                super.write(task._file, ByteBuffer.wrap(task._content));
+            } catch (IOException e) {
+                fail(task._file, e);
+            } catch (RuntimeException e) {
+                fail(task._file, e);
+            }
+        }
+    }
+
+
+    /**
+     * Keep a failed write for the next flush.
+     *
+     * @param file_
+     *            the file
+     * @param cause_
+     *            why it failed
+     */
+    private void fail(File file_, Exception cause_) {
+        synchronized (_failures) {
+            _failures.add(new IOException("Cannot write " + file_ + " - " + cause_.getMessage(), cause_));
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * UxfBatch. Generates java classes for many UXF diagrams in one JVM, sharing one
+ * worker pool, and prints one summary at the end.
+ * Diagrams are given as a directory (searched for *.uxf and *.uxf.gz), a glob (e.g. "diagrams/**.uxf"),
+ * a zip file (every *.uxf entry) or a manifest file listing one diagram per line.
+ * A diagram may be a plain file, a gzip file or a zip entry (see UxfInput).
+ * A config file (java properties) may set the package prefix, imports list and output
+ * directory of each diagram, keyed by the diagram file name without ".uxf":
+ * <pre>
+ * collar.packagePrefix=com.mycom.collar
+ * collar.imports=.myutils;java.util
+ * collar.outputDir=generated/collar
+ * </pre>
+ *
+ */
+public class UxfBatch {
+
+    /**
+     * The UXF file extension.
+     */
+    public static final String UXF_EXTENSION = ".uxf";
+
+    /**
+     * The gzipped UXF file extension.
+     */
+    public static final String UXF_GZIP_EXTENSION = UXF_EXTENSION + UxfInput.GZIP_EXTENSION;
+
+    /**
+     * The _defaults, used for diagrams without config entries.
+     */
+    private final UxfOptions _defaults;
+
+    /**
+     * The _imports list, as given on the command line.
+     */
+    private final String _importsList;
+
+    /**
+     * The _config.
+     */
+    private final Properties _config;
+
+    /**
+     * UxfBatch constructor.
+     *
+     * @param defaults_
+     *            the default options
+     * @param importsList_
+     *            the default delimited imports list
+     * @param config_
+     *            the per-diagram config, may be empty
+     */
+    public UxfBatch(UxfOptions defaults_, String importsList_, Properties config_) {
+        _defaults = defaults_;
+        _importsList = importsList_;
+        _config = config_;
+    }
+
+
+    /**
+     * Load a batch config file.
+     *
+     * @param filename_
+     *            the config filename, may be null
+     * @return the config, empty if no filename is given
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public static Properties loadConfig(String filename_) throws IOException {
+        Properties config = new Properties();
+        if (filename_ != null) {
+            InputStream in = new FileInputStream(filename_);
+            try {
+                config.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        return config;
+    }
+
+
+    /**
+     * Find the diagrams of a batch.
+     *
+     * @param spec_
+     *            a directory, a glob, a zip file or a manifest file
+     * @return the diagram filenames, sorted
+     * @throws IOException
+     *             if the directory or manifest cannot be read
+     */
+    public static List<String> findDiagrams(String spec_) throws IOException {
+        final List<String> diagrams = new ArrayList<String>();
+
+        // Directory: every *.uxf and *.uxf.gz below it
+        Path path = indexOfGlob(spec_) < 0 && !spec_.contains(UxfInput.ENTRY_SEPARATOR) ? Paths.get(spec_) : null;
+        if (path != null && Files.isDirectory(path)) {
+            walk(path, FileSystems.getDefault().getPathMatcher("glob:**{" + UXF_EXTENSION + "," + UXF_GZIP_EXTENSION + "}"), diagrams);
+            Collections.sort(diagrams);
+            return diagrams;
+        }
+
+        // Single diagram, possibly a zip entry
+        String lower = spec_.toLowerCase();
+        if (indexOfGlob(spec_) < 0 && (lower.endsWith(UXF_EXTENSION) || lower.endsWith(UXF_GZIP_EXTENSION))) {
+            diagrams.add(spec_);
+            return diagrams;
+        }
+
+        // Zip file: every *.uxf entry
+        if (path != null && lower.endsWith(UxfInput.ZIP_EXTENSION)) {
+            return UxfInput.listEntries(spec_, UXF_EXTENSION);
+        }
+
+        // Manifest: one diagram per line, relative to the manifest, # for comments
+        if (path != null) {
+            Path base = path.toAbsolutePath().getParent();
+            BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) continue;
+                    diagrams.add(base.resolve(line).toString());
+                }
+            } finally {
+                reader.close();
+            }
+            return diagrams;
+        }
+
+        // Glob: walk from the last directory before the first wildcard
+        int sep = Math.max(spec_.lastIndexOf('/', indexOfGlob(spec_)), spec_.lastIndexOf(File.separatorChar, indexOfGlob(spec_)));
+        Path base = Paths.get(sep >= 0 ? spec_.substring(0, sep + 1) : ".");
+        walk(base, FileSystems.getDefault().getPathMatcher("glob:" + spec_.substring(sep + 1)), diagrams);
+        Collections.sort(diagrams);
+        return diagrams;
+    }
+
+
+    /**
+     * Run all diagrams and print the summary.
+     *
+     * @param diagrams_
+     *            the diagram filenames
+     * @param executor_
+     *            the worker pool shared by all diagrams, or null to run serially
+     * @param stats_
+     *            the stats collector shared by all diagrams, or null
+     * @return true if every diagram was generated
+     */
+    public boolean run(List<String> diagrams_, ExecutorService executor_, UxfStats stats_) {
+        long start = System.currentTimeMillis();
+        int classes = 0;
+        List<String> failures = new ArrayList<String>();
+        UxfOutputWriter writer = UxfOutputWriter.create(_defaults);
+        for (String diagram : diagrams_) {
+            try {
+                classes += UxfParser.generate(diagram, optionsFor(diagram), executor_, writer, stats_);
+            } catch (Exception ex) {
+                failures.add(diagram + ": " + ex);
+            }
+        }
+        try {
+            writer.close();
+        } catch (IOException ex) {
+            failures.add("output: " + ex);
+        }
+
+        // Summary
+        UxfLog.info("Batch summary: " + diagrams_.size() + " diagrams, "
+                + (diagrams_.size() - failures.size()) + " ok, "
+                + failures.size() + " failed, "
+                + classes + " classes, "
+                + writer + " files, "
+                + (System.currentTimeMillis() - start) + " ms");
+        for (String failure : failures) {
+            UxfLog.warn("  FAILED ", failure);
+        }
+        return failures.isEmpty();
+    }
+
+
+    /**
+     * Gets the options of one diagram, from its config entries or the defaults.
+     *
+     * @param diagram_
+     *            the diagram filename
+     * @return the diagram options
+     */
+    protected UxfOptions optionsFor(String diagram_) {
+        String name = new File(diagram_).getName();
+        if (name.toLowerCase().endsWith(UXF_GZIP_EXTENSION)) {
+            name = name.substring(0, name.length() - UXF_GZIP_EXTENSION.length());
+        } else if (name.toLowerCase().endsWith(UXF_EXTENSION)) {
+            name = name.substring(0, name.length() - UXF_EXTENSION.length());
+        }
+        String packagePrefix = _config.getProperty(name + ".packagePrefix", _defaults.getOutputJavaPackagePrefix());
+        String outputDir = _config.getProperty(name + ".outputDir", _defaults.getOutputJavaSrcDir());
+        String importsList = _config.getProperty(name + ".imports", _importsList);
+        ArrayList<String> imports = UxfParser.parseImportsList(packagePrefix, importsList, ";", ".");
+        if (imports == null) {
+            throw new IllegalArgumentException("[importsList] could not be parsed - " + importsList);
+        }
+        return _defaults.derive(outputDir, packagePrefix, imports);
+    }
+
+
+    /**
+     * Add every file below base_ whose relative path matches.
+     *
+     * @param base_
+     *            the directory to walk
+     * @param matcher_
+     *            the relative path matcher
+     * @param diagrams_
+     *            the list to add to
+     * @throws IOException
+     *             if the directory cannot be read
+     */
+    private static void walk(final Path base_, final PathMatcher matcher_, final List<String> diagrams_) throws IOException {
+        Files.walkFileTree(base_, new SimpleFileVisitor<Path>() {
+            public FileVisitResult visitFile(Path file_, BasicFileAttributes attrs_) {
+                if (attrs_.isRegularFile() && matcher_.matches(base_.relativize(file_))) {
+                    diagrams_.add(file_.toString());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+
+    /**
+     * Position of the first glob character.
+     *
+     * @param spec_
+     *            the diagram spec
+     * @return the index, or -1 if spec_ is not a glob
+     */
+    private static int indexOfGlob(String spec_) {
+        for (int x = 0; x < spec_.length(); x++) {
+            if ("*?[{".indexOf(spec_.charAt(x)) >= 0) {
+                return x;
+            }
+        }
+        return -1;
+    }
+}
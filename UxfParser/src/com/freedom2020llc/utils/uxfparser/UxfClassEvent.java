@@ -0,0 +1,72 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * UxfClassEvent. JFR event for the generation of one class, from parsing its
+ * panel to writing its file.
+ *
+ */
+@Name("com.freedom2020llc.uxfparser.Class")
+@Label("UXF Class")
+@Category("UXF Parser")
+@Description("Generation of one java class from a UXF panel")
+@StackTrace(false)
+public class UxfClassEvent extends Event {
+
+    /**
+     * The diagram.
+     */
+    @Label("Diagram")
+    public String diagram;
+
+    /**
+     * The class name.
+     */
+    @Label("Class")
+    public String className;
+
+    /**
+     * The package name.
+     */
+    @Label("Package")
+    public String packageName;
+
+    /**
+     * The bytes emitted.
+     */
+    @Label("Bytes Emitted")
+    @DataAmount
+    public long bytesEmitted;
+
+    /**
+     * The parse time.
+     */
+    @Label("Parse Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long parseTime;
+
+    /**
+     * The emit time.
+     */
+    @Label("Emit Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long emitTime;
+
+    /**
+     * The write time.
+     */
+    @Label("Write Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long writeTime;
+}
@@ -0,0 +1,203 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamException;
+
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * UxfEntityCatalog. Resolves the external DTDs and entities of a diagram from
+ * local files only (see --xml-catalog), for both the streaming and the DOM
+ * reader. A catalog is a text file (UTF-8) mapping a public id, a system id or
+ * the file name of a system id to a local file, relative to the catalog, one
+ * "id = path" per line (split at the last "="; "#" starts a comment line):
+ * <pre>
+ * -//Example//DTD Diagram 1.0//EN=dtd/diagram.dtd
+ * http://example.com/diagram.dtd=dtd/diagram.dtd
+ * </pre>
+ * Local files are read once and kept in memory (until they change), so a long
+ * running JVM (--watch, --batch) does not read them again for every diagram.
+ * A reference the catalog does not know fails at once, instead of going to the
+ * network or the file system.
+ *
+ */
+public class UxfEntityCatalog implements XMLResolver, EntityResolver {
+
+    /**
+     * Contents of local files by path, replaced when the file changes.
+     */
+    private static final Map<String, Cached> CACHE = new ConcurrentHashMap<String, Cached>();
+
+    /**
+     * The contents of a local file and the modification time they were read at.
+     */
+    private static class Cached {
+
+        /** The modification time. */
+        final long _lastModified;
+
+        /** The contents. */
+        final byte[] _bytes;
+
+        Cached(long lastModified_, byte[] bytes_) {
+            _lastModified = lastModified_;
+            _bytes = bytes_;
+        }
+    }
+
+    /**
+     * The _entries: local file by public id, system id or file name.
+     */
+    private final Map<String, File> _entries = new TreeMap<String, File>();
+
+    /**
+     * The _name of the catalog, for messages.
+     */
+    private final String _name;
+
+    /**
+     * UxfEntityCatalog constructor, for an empty catalog: every external
+     * reference fails.
+     */
+    public UxfEntityCatalog() {
+        _name = "the catalog (none given, see --xml-catalog)";
+    }
+
+
+    /**
+     * UxfEntityCatalog constructor.
+     *
+     * @param catalogFilename_
+     *            the catalog file
+     * @throws IOException
+     *             if the catalog cannot be read, or names a local file that does not exist
+     */
+    public UxfEntityCatalog(String catalogFilename_) throws IOException {
+        File catalog = new File(catalogFilename_);
+        _name = "catalog " + catalogFilename_;
+        File dir = catalog.getAbsoluteFile().getParentFile();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(catalog.toPath(), StandardCharsets.UTF_8)) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int equals = line.lastIndexOf('=');
+            if (equals <= 0) {
+                throw new IOException("Catalog " + catalogFilename_ + " line " + lineNumber + ": expected id = path - " + line);
+            }
+            String id = line.substring(0, equals).trim();
+            File file = new File(line.substring(equals + 1).trim());
+            if (!file.isAbsolute()) {
+                file = new File(dir, file.getPath());
+            }
+            if (!file.isFile()) {
+                throw new IOException("Catalog " + catalogFilename_ + ": no file for " + id + " - " + file);
+            }
+            _entries.put(id, file);
+        }
+    }
+
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return the size
+     */
+    public int size() {
+        return _entries.size();
+    }
+
+
+    /**
+     * Resolve an external reference for the streaming reader.
+     *
+     * @see javax.xml.stream.XMLResolver#resolveEntity(java.lang.String, java.lang.String, java.lang.String, java.lang.String)
+     */
+    public Object resolveEntity(String publicId_, String systemId_, String baseURI_, String namespace_) throws XMLStreamException {
+        try {
+            return new ByteArrayInputStream(resolve(publicId_, systemId_));
+        } catch (IOException ex) {
+            throw new XMLStreamException(ex.getMessage(), ex);
+        }
+    }
+
+
+    /**
+     * Resolve an external reference for the DOM reader.
+     *
+     * @see org.xml.sax.EntityResolver#resolveEntity(java.lang.String, java.lang.String)
+     */
+    public InputSource resolveEntity(String publicId_, String systemId_) throws SAXException {
+        try {
+            InputSource source = new InputSource(new ByteArrayInputStream(resolve(publicId_, systemId_)));
+            source.setPublicId(publicId_);
+            source.setSystemId(systemId_);
+            return source;
+        } catch (IOException ex) {
+            throw new SAXException(ex.getMessage(), ex);
+        }
+    }
+
+
+    /**
+     * Gets the contents of an external reference from the catalog.
+     *
+     * @param publicId_
+     *            the public id, may be null
+     * @param systemId_
+     *            the system id, may be null
+     * @return the contents of the local file
+     * @throws IOException
+     *             if the catalog does not know the reference, or the local file cannot be read
+     */
+    private byte[] resolve(String publicId_, String systemId_) throws IOException {
+        File file = null;
+        if (publicId_ != null) {
+            file = _entries.get(publicId_);
+        }
+        if (file == null && systemId_ != null) {
+            file = _entries.get(systemId_);
+            if (file == null) {
+                // Readers give system ids as written or resolved against the diagram, the file name is the same
+                file = _entries.get(systemId_.substring(systemId_.lastIndexOf('/') + 1));
+            }
+        }
+        if (file == null) {
+            throw new IOException("External reference not in " + _name + " - "
+                    + (publicId_ != null ? "PUBLIC \"" + publicId_ + "\" " : "") + "\"" + systemId_ + "\"");
+        }
+        // One entry per file, so editing a DTD under --watch does not keep every version
+        String key = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        Cached cached = CACHE.get(key);
+        if (cached == null || cached._lastModified != lastModified) {
+            cached = new Cached(lastModified, Files.readAllBytes(file.toPath()));
+            CACHE.put(key, cached);
+        }
+        return cached._bytes;
+    }
+
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return _name;
+    }
+}
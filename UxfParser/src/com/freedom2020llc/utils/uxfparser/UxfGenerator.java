@@ -0,0 +1,589 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * UxfGenerator. Turns each panel read from a UXF file into a java source file.
+ * Without an executor every panel is parsed and written on the reading thread.
+ * With an executor panels are parsed and written by the pool workers, while the
+ * generated sources are still printed in diagram order. When two panels produce
+ * the same file, the later panel wins, as it does in serial mode.
+ * In quiet mode nothing is printed and write errors are thrown (as
+ * UncheckedIOException) instead of being reported.
+ *
+ */
+public class UxfGenerator implements UxfPanelHandler, UxfSnapshot.Handler {
+
+    /**
+     * The _options.
+     */
+    private final UxfOptions _options;
+
+    /**
+     * The _executor, null for serial generation.
+     */
+    private final ExecutorService _executor;
+
+    /**
+     * Bounds the panels queued on the executor, so a fast reader cannot
+     * hold the whole diagram in memory.
+     */
+    private final int _maxPending;
+
+    /**
+     * Sources of submitted panels waiting to be printed, in diagram order.
+     */
+    private final ArrayDeque<Future<String>> _pending = new ArrayDeque<Future<String>>();
+
+    /**
+     * Sequence number of the last panel written to each file path.
+     */
+    private final ConcurrentHashMap<String, int[]> _lastWritten = new ConcurrentHashMap<String, int[]>();
+
+    /**
+     * The _sequence of the next panel.
+     */
+    private int _sequence = 0;
+
+    /**
+     * The _class count, number of classes generated.
+     */
+    private final AtomicInteger _classCount = new AtomicInteger();
+
+    /**
+     * The _filtered count, number of panels the filter left out.
+     */
+    private int _filteredCount = 0;
+
+    /**
+     * The _writer.
+     */
+    private final UxfOutputWriter _writer;
+
+    /**
+     * The _manifest of an incremental run, or null.
+     */
+    private UxfManifest _manifest = null;
+
+    /**
+     * The _snapshot being recorded, or null.
+     */
+    private UxfSnapshot _snapshot = null;
+
+    /**
+     * The _shard manifest recording the panels of this shard, or null.
+     */
+    private UxfShardManifest _shardManifest = null;
+
+    /**
+     * The _stats, or null.
+     */
+    private UxfStats _stats = null;
+
+    /**
+     * The _result collecting the generated classes, or null.
+     */
+    private UxfResult _result = null;
+
+    /**
+     * The _diagram name, for stats and JFR events.
+     */
+    private String _diagram = "";
+
+    /**
+     * Time spent in panel() on the reading thread.
+     */
+    private long _handlerNanos = 0;
+
+    /**
+     * UxfGenerator constructor.
+     *
+     * @param options_
+     *            the run options
+     * @param executor_
+     *            the executor running the panels, or null to run them serially
+     * @param writer_
+     *            the output writer
+     */
+    public UxfGenerator(UxfOptions options_, ExecutorService executor_, UxfOutputWriter writer_) {
+        _options = options_;
+        _executor = executor_;
+        _writer = writer_;
+        _maxPending = Math.max(1, options_.getWorkers()) * 4;
+    }
+
+
+    /**
+     * Parse, print and write a panel, or queue it on the executor.
+     *
+     * @param rawtext_
+     *            the raw panel text
+     * @see com.freedom2020llc.utils.uxfparser.UxfPanelHandler#panel(java.lang.String)
+     */
+    public void panel(final String rawtext_) {
+        long start = System.nanoTime();
+        final int sequence = _sequence++;
+        if ((_options.getShard() != null || _options.getFilter() != null) && !accept(UxfPanelHeader.scan(rawtext_), sequence)) {
+            // Another shard's panel, or filtered out: only the header was read
+        } else if (_executor == null) {
+            generate(rawtext_, sequence);
+        } else {
+            _pending.add(_executor.submit(new Callable<String>() {
+                public String call() {
+                    return generate(rawtext_, sequence);
+                }
+            }));
+            printCompleted(_pending.size() >= _maxPending);
+        }
+        _handlerNanos += System.nanoTime() - start;
+    }
+
+
+    /**
+     * Print and write a panel replayed from a snapshot, or queue it on the executor.
+     *
+     * @param uxf_
+     *            the class, or null for an empty panel
+     * @param rawDigest_
+     *            the digest of the panel text
+     * @see com.freedom2020llc.utils.uxfparser.UxfSnapshot.Handler#panel(com.freedom2020llc.utils.uxfparser.UxfJavaClass, byte[])
+     */
+    public void panel(final UxfJavaClass uxf_, final byte[] rawDigest_) {
+        long start = System.nanoTime();
+        final int sequence = _sequence++;
+        if (uxf_ == null) {
+            // Nothing to generate
+        } else if ((_options.getShard() != null || _options.getFilter() != null) && !accept(uxf_.getDiagramPackageName() == null 
+                ? null : new UxfPanelHeader(uxf_.getClassName(), uxf_.getDiagramPackageName()), sequence)) {
+            // Another shard's panel, or filtered out
+        } else if (_executor == null) {
+            generate(uxf_, rawDigest_, sequence);
+        } else {
+            _pending.add(_executor.submit(new Callable<String>() {
+                public String call() {
+                    return generate(uxf_, rawDigest_, sequence);
+                }
+            }));
+            printCompleted(_pending.size() >= _maxPending);
+        }
+        _handlerNanos += System.nanoTime() - start;
+    }
+
+
+    /**
+     * Checks if a panel passes the filter and belongs to the shard being
+     * generated, and records it in the shard manifest if so.
+     *
+     * @param header_
+     *            the panel header, or null
+     * @param sequence_
+     *            the position of the panel in the diagram
+     * @return true if the panel is generated
+     */
+    private boolean accept(UxfPanelHeader header_, int sequence_) {
+        if (_options.getFilter() != null && !_options.getFilter().accepts(header_)) {
+            _filteredCount++;
+            return false;
+        }
+        if (_options.getShard() != null && !_options.getShard().accepts(header_)) {
+            return false;
+        }
+        if (_shardManifest != null && header_ != null) {
+            _shardManifest.record(sequence_, header_);
+        }
+        return true;
+    }
+
+
+    /**
+     * Wait for all queued panels and print what is left.
+     */
+    public void finish() {
+        long start = System.nanoTime();
+        while (!_pending.isEmpty()) {
+            printCompleted(true);
+        }
+        _handlerNanos += System.nanoTime() - start;
+    }
+
+
+    /**
+     * Sets the manifest for incremental generation. Panels the manifest reports
+     * as unchanged are skipped, all others are recorded in it.
+     *
+     * @param manifest_
+     *            the manifest, or null to generate every panel
+     */
+    public void setManifest(UxfManifest manifest_) {
+        _manifest = manifest_;
+    }
+
+
+    /**
+     * Sets the snapshot to record every parsed panel in, changed or not.
+     *
+     * @param snapshot_
+     *            the snapshot, or null to record none
+     */
+    public void setSnapshot(UxfSnapshot snapshot_) {
+        _snapshot = snapshot_;
+    }
+
+
+    /**
+     * Sets the partial manifest recording the panels of the shard being generated.
+     *
+     * @param shardManifest_
+     *            the shard manifest, or null
+     */
+    public void setShardManifest(UxfShardManifest shardManifest_) {
+        _shardManifest = shardManifest_;
+    }
+
+
+    /**
+     * Sets the stats collector.
+     *
+     * @param stats_
+     *            the stats, or null to collect none
+     * @param diagram_
+     *            the diagram name the classes are recorded under
+     */
+    public void setStats(UxfStats stats_, String diagram_) {
+        _stats = stats_;
+        _diagram = diagram_;
+    }
+
+
+    /**
+     * Sets the result collecting the generated classes and their files.
+     *
+     * @param result_
+     *            the result, or null to keep nothing
+     */
+    public void setResult(UxfResult result_) {
+        _result = result_;
+    }
+
+
+    /**
+     * Gets the time spent handling panels on the reading thread, i.e. not reading XML.
+     *
+     * @return the handler time in nanoseconds
+     */
+    public long getHandlerNanos() {
+        return _handlerNanos;
+    }
+
+
+    /**
+     * Gets the number of panels the filter left out, i.e. never parsed.
+     *
+     * @return the filtered count
+     */
+    public int getFilteredCount() {
+        return _filteredCount;
+    }
+
+
+    /**
+     * Gets the number of classes generated so far.
+     *
+     * @return the class count
+     */
+    public int getClassCount() {
+        return _classCount.get();
+    }
+
+
+    /**
+     * Parse and write one panel. In serial mode the source is printed here,
+     * otherwise it is returned to be printed in diagram order.
+     *
+     * @param rawtext_
+     *            the raw panel text
+     * @param sequence_
+     *            the position of the panel in the diagram
+     * @return the generated source to print, or null
+     */
+    protected String generate(String rawtext_, int sequence_) {
+        byte[] rawDigest = null;
+        String hash = null;
+        if ((_manifest != null || _snapshot != null) && rawtext_ != null) {
+            rawDigest = UxfManifest.digest(rawtext_);
+        }
+        if (_manifest != null && rawDigest != null) {
+            hash = UxfManifest.hash(_options.getOutputJavaPackagePrefix(), _options.getImportsList(), _options.getTypeIndex(), _options.getTemplate(), rawDigest);
+            // A snapshot needs every panel parsed
+            if (_snapshot == null && isUnchanged(hash, sequence_)) {
+                return null;
+            }
+        }
+        UxfPhaseEvent parseEvent = new UxfPhaseEvent(UxfPhaseEvent.PARSE, _diagram);
+        parseEvent.begin();
+        long start = System.nanoTime();
+        UxfJavaClass uxf = UxfJavaClass.parse(
+                _options.getOutputJavaPackagePrefix(),
+                rawtext_,
+                _options.getOutputJavaSrcDir(),
+                _options.getImportsList()
+        );
+        if (_snapshot != null) {
+            _snapshot.record(sequence_, uxf, rawDigest);
+            if (hash != null && isUnchanged(hash, sequence_)) {
+                return null;
+            }
+        }
+        if (uxf == null) {
+            return null;
+        }
+        long parsed = System.nanoTime();
+        commit(parseEvent, uxf);
+        return emit(uxf, hash, sequence_, start, parsed);
+    }
+
+
+    /**
+     * Print and write one class replayed from a snapshot. In serial mode the
+     * source is printed here, otherwise it is returned to be printed in diagram order.
+     *
+     * @param uxf_
+     *            the class
+     * @param rawDigest_
+     *            the digest of the panel text
+     * @param sequence_
+     *            the position of the panel in the diagram
+     * @return the generated source to print, or null
+     */
+    protected String generate(UxfJavaClass uxf_, byte[] rawDigest_, int sequence_) {
+        String hash = null;
+        if (_manifest != null) {
+            hash = UxfManifest.hash(_options.getOutputJavaPackagePrefix(), _options.getImportsList(), _options.getTypeIndex(), _options.getTemplate(), rawDigest_);
+            if (isUnchanged(hash, sequence_)) {
+                return null;
+            }
+        }
+        long start = System.nanoTime();
+        return emit(uxf_, hash, sequence_, start, start);
+    }
+
+
+    /**
+     * Checks the manifest for an unchanged panel, recording it as such.
+     *
+     * @param hash_
+     *            the panel hash
+     * @param sequence_
+     *            the position of the panel in the diagram
+     * @return true if the panel is unchanged and can be skipped
+     */
+    private boolean isUnchanged(String hash_, int sequence_) {
+        if (_manifest.isUnchanged(hash_)) {
+            _manifest.recordUnchanged(sequence_, hash_);
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Emit, print and write a parsed class.
+     *
+     * @param uxf_
+     *            the class
+     * @param hash_
+     *            the panel hash to record in the manifest, or null
+     * @param sequence_
+     *            the position of the panel in the diagram
+     * @param start_
+     *            when parsing started
+     * @param parsed_
+     *            when parsing ended
+     * @return the generated source to print, or null
+     */
+    private String emit(UxfJavaClass uxf_, String hash_, int sequence_, long start_, long parsed_) {
+        _classCount.incrementAndGet();
+        uxf_.setTypeIndex(_options.getTypeIndex());
+        uxf_.setTemplate(_options.getTemplate());
+        
+        // Emit once into the buffers of this thread, print and write from there
+        UxfPhaseEvent emitEvent = new UxfPhaseEvent(UxfPhaseEvent.EMIT, _diagram);
+        emitEvent.begin();
+        UxfSourceBuffer buffer = UxfSourceBuffer.get();
+        StringBuilder chars = buffer.chars();
+        try {
+            uxf_.emit(chars);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+            throw new IllegalStateException(e);
+        }
+        String source = (_options.isQuiet() || !UxfLog.isDebug()) ? null : chars.toString();
+        ByteBuffer content = buffer.encode(chars);
+        int bytes = content.remaining();
+        long emitted = System.nanoTime();
+        commit(emitEvent, uxf_);
+        if (_executor == null) {
+            print(source);
+            source = null;
+        }
+        
+        UxfPhaseEvent writeEvent = new UxfPhaseEvent(UxfPhaseEvent.WRITE, _diagram);
+        writeEvent.begin();
+        UxfOutputWriter.Result writeResult = write(uxf_, content, sequence_);
+        long written = System.nanoTime();
+        commit(writeEvent, uxf_);
+        if (_manifest != null) {
+            _manifest.record(sequence_, hash_, uxf_.getClassFile());
+        }
+        if (_result != null) {
+            _result.add(sequence_, uxf_, writeResult);
+        }
+        
+        // Counters
+        UxfClassEvent classEvent = new UxfClassEvent();
+        if (classEvent.shouldCommit()) {
+            classEvent.diagram = _diagram;
+            classEvent.className = uxf_.getClassName();
+            classEvent.packageName = uxf_.getPackageName();
+            classEvent.bytesEmitted = bytes;
+            classEvent.parseTime = parsed_ - start_;
+            classEvent.emitTime = emitted - parsed_;
+            classEvent.writeTime = written - emitted;
+            classEvent.commit();
+        }
+        if (_stats != null) {
+            _stats.recordClass(_diagram, uxf_.getClassName(), uxf_.getPackageName(), bytes, 
+                    parsed_ - start_, emitted - parsed_, written - emitted);
+        }
+        return source;
+    }
+
+
+    /**
+     * Commit a phase event of a class, if it is recorded.
+     *
+     * @param event_
+     *            the phase event
+     * @param uxf_
+     *            the class
+     */
+    private static void commit(UxfPhaseEvent event_, UxfJavaClass uxf_) {
+        event_.end();
+        if (event_.shouldCommit()) {
+            event_.className = uxf_.getPackageName() + "." + uxf_.getClassName();
+            event_.commit();
+        }
+    }
+
+
+    /**
+     * Write the class file, unless a later panel of the diagram already wrote it.
+     *
+     * @param uxf_
+     *            the class to write
+     * @param content_
+     *            the encoded source
+     * @param sequence_
+     *            the position of the panel in the diagram
+     * @return the write result, or null if the file was not written
+     */
+    private UxfOutputWriter.Result write(UxfJavaClass uxf_, ByteBuffer content_, int sequence_) {
+        if (_executor == null) {
+            return writeclassfile(uxf_, content_);
+        }
+        String path = uxf_.getClassFile().getPath();
+        int[] last = _lastWritten.get(path);
+        if (last == null) {
+            int[] created = new int[] { -1 };
+            last = _lastWritten.putIfAbsent(path, created);
+            if (last == null) {
+                last = created;
+            }
+        }
+        synchronized (last) {
+            if (last[0] > sequence_) {
+                return null;
+            }
+            UxfOutputWriter.Result result = writeclassfile(uxf_, content_);
+            last[0] = sequence_;
+            return result;
+        }
+    }
+
+
+    /**
+     * Write the class file, printing what was done unless quiet.
+     *
+     * @param uxf_
+     *            the class to write
+     * @param content_
+     *            the encoded source
+     * @return the write result, or null if the file could not be written
+     */
+    private UxfOutputWriter.Result writeclassfile(UxfJavaClass uxf_, ByteBuffer content_) {
+        if (!_options.isQuiet()) {
+            return uxf_.writeclassfile(_writer, content_);
+        }
+        try {
+            return _writer.write(uxf_.getClassFile(), content_);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    /**
+     * Print queued sources in diagram order.
+     *
+     * @param wait_
+     *            true to wait for the oldest panel, false to stop at the first unfinished panel
+     */
+    private void printCompleted(boolean wait_) {
+        while (!_pending.isEmpty() && (wait_ || _pending.peek().isDone())) {
+            wait_ = false;
+            Future<String> next = _pending.poll();
+            try {
+                print(next.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while generating classes", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+
+    /**
+     * Print a generated source.
+     *
+     * @param source_
+     *            the source, or null for an empty panel
+     */
+    private void print(String source_) {
+        if (source_ == null || _options.isQuiet()) {
+            return;
+        }
+        UxfLog.debug(source_);
+        UxfLog.debug("-----------------------");
+    }
+}
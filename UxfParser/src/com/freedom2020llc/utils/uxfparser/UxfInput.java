@@ -0,0 +1,268 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * UxfInput. Opens diagrams for reading, whatever they are stored in:
+ * <ul>
+ * <li>"collar.uxf": a plain file, memory-mapped when it is large and mapping is on</li>
+ * <li>"collar.uxf.gz": a gzip file, decompressed while it is parsed</li>
+ * <li>"diagrams.zip!model/collar.uxf": an entry of a zip file, decompressed while it is parsed</li>
+ * </ul>
+ * Nothing is decompressed to disk.
+ * A mapping is only released when the buffer is garbage collected, and keeps
+ * the file locked on Windows until then, so mapping is off unless turned on
+ * (see setMapping()): the command line turns it on for one run, not for
+ * --watch, and a long running process embedding the parser should leave it off.
+ *
+ */
+public class UxfInput {
+
+    /**
+     * The gzip file extension.
+     */
+    public static final String GZIP_EXTENSION = ".gz";
+
+    /**
+     * The zip file extension.
+     */
+    public static final String ZIP_EXTENSION = ".zip";
+
+    /**
+     * Separates a zip file from the entry name.
+     */
+    public static final String ENTRY_SEPARATOR = "!";
+
+    /**
+     * Plain files from this size on are memory-mapped.
+     */
+    public static final long MAP_THRESHOLD = 1024 * 1024;
+
+    /**
+     * Buffer size of streamed files.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The _mapping flag: large plain files are memory-mapped.
+     */
+    private static volatile boolean _mapping = false;
+
+    /**
+     * Turn memory-mapping of large plain files on or off. Only turn it on in
+     * a process that ends soon after reading, as mapped files stay open until
+     * the buffers are garbage collected.
+     *
+     * @param mapping_
+     *            true to map plain files of MAP_THRESHOLD bytes or more
+     */
+    public static void setMapping(boolean mapping_) {
+        _mapping = mapping_;
+    }
+
+
+    /**
+     * Checks if large plain files are memory-mapped.
+     *
+     * @return the mapping flag
+     */
+    public static boolean isMapping() {
+        return _mapping;
+    }
+
+
+    /**
+     * Open a diagram.
+     *
+     * @param uxfFilename_
+     *            the diagram: a file, a .gz file or zipfile!entry
+     * @return the diagram content, to be closed by the caller
+     * @throws IOException
+     *             if the diagram cannot be opened
+     */
+    public static InputStream open(String uxfFilename_) throws IOException {
+        int separator = uxfFilename_.indexOf(ENTRY_SEPARATOR);
+        if (separator > 0 && uxfFilename_.substring(0, separator).toLowerCase().endsWith(ZIP_EXTENSION)) {
+            return openEntry(uxfFilename_.substring(0, separator), uxfFilename_.substring(separator + 1));
+        }
+        if (uxfFilename_.toLowerCase().endsWith(GZIP_EXTENSION)) {
+            return new GZIPInputStream(new FileInputStream(uxfFilename_), BUFFER_SIZE);
+        }
+        File file = new File(uxfFilename_);
+        if (_mapping && file.length() >= MAP_THRESHOLD && file.length() <= Integer.MAX_VALUE) {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                // The mapping stays valid after the channel is closed
+                return new MappedInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            } finally {
+                channel.close();
+            }
+        }
+        return new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+    }
+
+
+    /**
+     * Gets the file a diagram is stored in.
+     *
+     * @param uxfFilename_
+     *            the diagram: a file, a .gz file or zipfile!entry
+     * @return the file, the zip file for an entry
+     */
+    public static File file(String uxfFilename_) {
+        int separator = uxfFilename_.indexOf(ENTRY_SEPARATOR);
+        if (separator > 0 && uxfFilename_.substring(0, separator).toLowerCase().endsWith(ZIP_EXTENSION)) {
+            return new File(uxfFilename_.substring(0, separator));
+        }
+        return new File(uxfFilename_);
+    }
+
+
+    /**
+     * Gets the system id of a diagram, used to resolve relative references.
+     *
+     * @param uxfFilename_
+     *            the diagram: a file, a .gz file or zipfile!entry
+     * @return the system id URI
+     */
+    public static String systemId(String uxfFilename_) {
+        File file = file(uxfFilename_);
+        if (!file.getPath().equals(uxfFilename_)) {
+            return "jar:" + file.toURI() + "!/" + uxfFilename_.substring(uxfFilename_.indexOf(ENTRY_SEPARATOR) + 1);
+        }
+        return file.toURI().toString();
+    }
+
+
+    /**
+     * Lists the diagrams of a zip file.
+     *
+     * @param zipFilename_
+     *            the zip file
+     * @param extensions_
+     *            the diagram file extensions, e.g. ".uxf"
+     * @return the diagrams as zipfile!entry, sorted
+     * @throws IOException
+     *             if the zip file cannot be read
+     */
+    public static List<String> listEntries(String zipFilename_, String... extensions_) throws IOException {
+        List<String> diagrams = new ArrayList<String>();
+        ZipFile zip = new ZipFile(zipFilename_);
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName().toLowerCase();
+                for (String extension : extensions_) {
+                    if (!entry.isDirectory() && name.endsWith(extension)) {
+                        diagrams.add(zipFilename_ + ENTRY_SEPARATOR + entry.getName());
+                        break;
+                    }
+                }
+            }
+        } finally {
+            zip.close();
+        }
+        Collections.sort(diagrams);
+        return diagrams;
+    }
+
+
+    /**
+     * Open an entry of a zip file. The zip file is closed with the stream.
+     *
+     * @param zipFilename_
+     *            the zip file
+     * @param entryName_
+     *            the entry name
+     * @return the entry content
+     * @throws IOException
+     *             if the zip file cannot be read or has no such entry
+     */
+    private static InputStream openEntry(String zipFilename_, String entryName_) throws IOException {
+        final ZipFile zip = new ZipFile(zipFilename_);
+        ZipEntry entry = zip.getEntry(entryName_);
+        if (entry == null) {
+            zip.close();
+            throw new FileNotFoundException(zipFilename_ + ENTRY_SEPARATOR + entryName_ + " (no such zip entry)");
+        }
+        return new FilterInputStream(new BufferedInputStream(zip.getInputStream(entry), BUFFER_SIZE)) {
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    zip.close();
+                }
+            }
+        };
+    }
+
+
+    /**
+     * An input stream over a memory-mapped file. A file truncated while it is
+     * mapped makes the JVM raise an InternalError on access, which is turned
+     * into an IOException like any other failed read.
+     */
+    private static class MappedInputStream extends InputStream {
+
+        /** The mapped content. */
+        private final ByteBuffer _buffer;
+
+        MappedInputStream(ByteBuffer buffer_) {
+            _buffer = buffer_;
+        }
+
+        public int read() throws IOException {
+            try {
+                return _buffer.hasRemaining() ? (_buffer.get() & 0xff) : -1;
+            } catch (InternalError e) {
+                throw new IOException("Diagram changed while it was read", e);
+            }
+        }
+
+        public int read(byte[] bytes_, int offset_, int length_) throws IOException {
+            if (length_ == 0) {
+                return 0;
+            }
+            if (!_buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length_, _buffer.remaining());
+            try {
+                _buffer.get(bytes_, offset_, count);
+            } catch (InternalError e) {
+                throw new IOException("Diagram changed while it was read", e);
+            }
+            return count;
+        }
+
+        public long skip(long count_) {
+            int count = (int) Math.max(0, Math.min(count_, _buffer.remaining()));
+            _buffer.position(_buffer.position() + count);
+            return count;
+        }
+
+        public int available() {
+            return _buffer.remaining();
+        }
+    }
+}
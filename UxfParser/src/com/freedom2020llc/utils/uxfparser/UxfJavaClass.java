@@ -4,10 +4,11 @@
 package com.freedom2020llc.utils.uxfparser;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * UxfJavaClass. Simple representation of a java class that is parsed from UXF raw text 
@@ -41,6 +42,11 @@ public class UxfJavaClass {
      */
     private String _packageName = "";
     
+    /**
+     * The _diagram package name, as given in the diagram (no prefix), null if not set.
+     */
+    private String _diagramPackageName = null;
+    
     /**
      * The _fields.
      */
@@ -51,6 +57,16 @@ public class UxfJavaClass {
      */
     private ArrayList<String> _methods = new ArrayList<String>();
     
+    /**
+     * The _field lines, panel line of each field (1 based, 0 if unknown).
+     */
+    private ArrayList<Integer> _fieldLines = new ArrayList<Integer>();
+    
+    /**
+     * The _method lines, panel lines of each method's signature and body.
+     */
+    private ArrayList<int[]> _methodLines = new ArrayList<int[]>();
+    
     /**
      * The _comments.
      */
@@ -84,6 +100,8 @@ public class UxfJavaClass {
      *            the rawtext_
      * @param destinationdir_
      *            the destinationdir_
+     * @param importsList
+     *            import package names for this run (shared, not copied)
      * @return new UxfJavaClass
      */
     public static UxfJavaClass parse(String packagePrefix_, String rawtext_, String destinationdir_, ArrayList<String> importsList) {
@@ -93,51 +111,60 @@ public class UxfJavaClass {
             return null;
         }
 
-        if (_importPackages.isEmpty()) {
-        	_importPackages.addAll(importsList);
-        }
-        
         // 
         UxfJavaClass uxf = new UxfJavaClass(packagePrefix_, destinationdir_);
+        if (importsList != null) {
+            uxf.setImportPackages(importsList);
+        }
         
-        // Split on "--" to get all sections
-        String[]sections = rawtext_.split("--");
+        // Find all "--" sections and the "Responsibilities" comments in one pass
+        UxfPanelTokenizer tokens = new UxfPanelTokenizer(rawtext_);
         
         // Get class name and package
-        if (sections.length > 1) {
+        if (tokens.hasSection(1)) {
             
             String className = "CLASSNAME_NOT_FOUND";
             String classDefinition = "CLASSNAME_DEFINITION_NOT_FOUND";
             String packageName = "PACKAGENAME_NOT_FOUND";
             
             // Get class and package names
-            String[] lines = sections[0].split("\n");
-            printArray(lines);
+            int headerStart = tokens.sectionStart(0);
+            int headerEnd = tokens.sectionEnd(0);
+            if (UxfLog.isDebug()) {
+                printSegments(rawtext_, headerStart, headerEnd, "\n");
+            }
+            String firstLine = UxfPanelTokenizer.segment(rawtext_, headerStart, headerEnd, "\n", 0);
+            String secondLine = UxfPanelTokenizer.segment(rawtext_, headerStart, headerEnd, "\n", 1);
             
             // Get class name and definition
-            if (lines.length > 0) {
-                String []tmp = lines[0].trim().split(" ");
-                classDefinition = lines[0].trim();
-                System.out.println("Classdef=" + classDefinition);
+            if (firstLine != null) {
+                String definition = firstLine.trim();
+                classDefinition = definition;
+                UxfLog.debug("Classdef=", classDefinition);
                 classDefinition = classDefinition.replace("{abstract}", "abstract class");
-                System.out.println("Classdef=" + classDefinition);
+                UxfLog.debug("Classdef=", classDefinition);
                 classDefinition = classDefinition.replace("//", "");                
-                System.out.println("Classdef=" + classDefinition);
+                UxfLog.debug("Classdef=", classDefinition);
                 if (classDefinition.contains("abstract")) {
-                    className = tmp[1].trim();
+                    className = UxfPanelTokenizer.segment(definition, 0, definition.length(), " ", 1);
                 } else {
                     classDefinition="class " + classDefinition;
-                    className = tmp[0].trim();
+                    className = UxfPanelTokenizer.segment(definition, 0, definition.length(), " ", 0);
                 }
-                System.out.println("Classdef=" + classDefinition);
+                className = (className != null) ? className.trim() : "";
+                UxfLog.debug("Classdef=", classDefinition);
             }
             
             // Get package name
-            String[] line = lines[1].split("::");
-            printArray(line);
-            if (line.length > 1) {
-                packageName = line[1].trim().toLowerCase();
-            }            
+            if (secondLine != null) {
+                if (UxfLog.isDebug()) {
+                    printSegments(secondLine, 0, secondLine.length(), "::");
+                }
+                String packagePart = UxfPanelTokenizer.segment(secondLine, 0, secondLine.length(), "::", 1);
+                if (packagePart != null) {
+                    packageName = packagePart.trim().toLowerCase();
+                }
+            }
             
             // Set values
             uxf.setClassName(className);
@@ -153,72 +180,90 @@ public class UxfJavaClass {
         // MY_FINALVAR:HashMap:new HashMap() -> public static final HashMap MY_FINALVAR = new HashMap();
         // Field examples that end with ";" will just be translated with no change (nothing clever):
         // protected static NewClass MY_COMPLEX_VAR = new NewClass(5);  
-        if (sections.length > 2) {
-            String [] fields = sections[1].split("\n");
+        if (tokens.hasSection(2)) {
+            int end = tokens.sectionEnd(1);
+            int line = UxfPanelTokenizer.lineNumber(rawtext_, tokens.sectionStart(1)) - 1;
             
             // Loop through all fields
-            for (int x=0; x<fields.length; x++) {
+            for (int pos = tokens.sectionStart(1); pos <= end; ) {
+                int lineEnd = UxfPanelTokenizer.lineEnd(rawtext_, pos, end);
+                int lineStart = pos;
+                pos = lineEnd + 1;
+                line++;
+                if (UxfPanelTokenizer.isBlank(rawtext_, lineStart, lineEnd)) continue;
                 
                 // Field ends with ";" assume it should just be translated with no change
-                String fieldtext = fields[x].trim(); 
+                String fieldtext = rawtext_.substring(lineStart, lineEnd).trim(); 
                 if (fieldtext.endsWith(";")) {
-                    uxf.addField(fieldtext);
+                    uxf.addField(fieldtext, line);
                 } else {
-                    // Field needs parsing
-                    String tokens[] = fieldtext.split(":");
-                    if (tokens.length >= 2) {
+                    // Field needs parsing: name:type[:initialisation]
+                    String dataType = UxfPanelTokenizer.segment(fieldtext, 0, fieldtext.length(), ":", 1);
+                    if (dataType != null) {
                         String modifier = "protected";
-                        String variableName = tokens[0].trim();
-                        String dataType = tokens[1].trim();
-                        String initialisation = (tokens.length > 2)?tokens[2].trim():"";
+                        String variableName = UxfPanelTokenizer.segment(fieldtext, 0, fieldtext.length(), ":", 0).trim();
+                        dataType = dataType.trim();
+                        String initialisation = UxfPanelTokenizer.segment(fieldtext, 0, fieldtext.length(), ":", 2);
+                        initialisation = (initialisation != null) ? initialisation.trim() : "";
                         boolean constant = false;
                         if (variableName.equals(variableName.toUpperCase())) {
                             modifier = "public static final";
                             constant = true;
                         }                    
                         String field = modifier + " " + dataType + " " + (!constant?"_":"") + variableName + (("".equals(initialisation))?";":" = " + initialisation + ";");
-                        uxf.addField(field);
+                        uxf.addField(field, line);
                     }
                 }
             }
         }
 
         // Get methods
-        if (sections.length > 3) {
-            String [] methods = sections[2].split("\n");
+        if (tokens.hasSection(3)) {
+            int end = tokens.sectionEnd(2);
             boolean insidemethod = false;
             String method = "METHOD_NOT_FOUND";
+            // A //JAVADOC method body can run to thousands of lines: appended, not concatenated
+            StringBuilder body = new StringBuilder();
             String modifier = "public";
             String methodname = "METHOD NAME NOT FOUND";
             String autocomment = "";
-            for (int x=0; x<methods.length; x++) {
+            ArrayList<Integer> methodLines = new ArrayList<Integer>();
+            int line = UxfPanelTokenizer.lineNumber(rawtext_, tokens.sectionStart(2)) - 1;
+            for (int pos = tokens.sectionStart(2); pos <= end; ) {
+                int lineEnd = UxfPanelTokenizer.lineEnd(rawtext_, pos, end);
+                int lineStart = pos;
+                pos = lineEnd + 1;
+                line++;
                 
                 // ignore blank rows
-                if (methods[x].trim().length()==0) continue;
+                if (UxfPanelTokenizer.isBlank(rawtext_, lineStart, lineEnd)) continue;
+                String methodline = rawtext_.substring(lineStart, lineEnd);
                 
                 // Search for key modifiers
                 modifier = "public ";
-                if ( methods[x].trim().contains("{private}") ) {
-                    methods[x] = methods[x].replace("{private}", "");
+                if ( methodline.contains("{private}") ) {
+                    methodline = methodline.replace("{private}", "");
                     modifier = "private ";
                 }
-                if ( methods[x].trim().contains("{protected}") ) {
-                    methods[x] = methods[x].replace("{protected}", "");
+                if ( methodline.contains("{protected}") ) {
+                    methodline = methodline.replace("{protected}", "");
                     modifier = "protected ";
                 }
-                if ( methods[x].trim().contains("{abstract}") ) {
-                    methods[x] = methods[x].replace("{abstract}", "");
+                if ( methodline.contains("{abstract}") ) {
+                    methodline = methodline.replace("{abstract}", "");
                     modifier = "public abstract ";
                 }
-                if ( methods[x].trim().contains("{static}") ) {
-                    methods[x] = methods[x].replace("{static}", "");
+                if ( methodline.contains("{static}") ) {
+                    methodline = methodline.replace("{static}", "");
                     modifier = "public static ";
                 }
                 
                 // Get method name, and set javadoc comment
-                System.out.println("methods[x].indexOf('(')="+methods[x].indexOf('(') + ", insidemethod=" + insidemethod);
+                if (UxfLog.isDebug()) {
+                    UxfLog.debug("methods[x].indexOf('(')="+methodline.indexOf('(') + ", insidemethod=" + insidemethod);
+                }
                 if (!insidemethod) {
-                    methodname = methods[x].substring(0, methods[x].indexOf('('));
+                    methodname = methodline.substring(0, methodline.indexOf('('));
                     if (methodname.lastIndexOf(' ') > 0 ) {
                         methodname = methodname.substring(methodname.lastIndexOf(' '));
                         autocomment = methodname;
@@ -226,67 +271,84 @@ public class UxfJavaClass {
                         autocomment = "Constructor: " + methodname;
                     }
                 }
-                System.out.println("methodname="+methodname + ", insidemethod=" + insidemethod);
+                if (UxfLog.isDebug()) {
+                    UxfLog.debug("methodname="+methodname + ", insidemethod=" + insidemethod);
+                }
                                 
                 // method
-                if ( (methods[x].contains("{") && methods[x].contains("}")) &&
-                     (methods[x].indexOf("{") < methods[x].indexOf("}"))) {
+                int open = methodline.indexOf('{');
+                int close = methodline.indexOf('}');
+                if (open >= 0 && close >= 0 && open < close) {
                     
                     // one line method
                     method = "\n" + SPACER +"/**\n" + SPACER + " * " + autocomment + "\n" + SPACER + " */\n";
-                    method += SPACER + modifier + methods[x];
-                    uxf.addMethod(method);
+                    method += SPACER + modifier + methodline;
+                    uxf.addMethod(method, new int[] { line });
                     insidemethod = false;
                     
                 } else {
                     
                     // debug
-                    System.out.println("methods[x]="+methods[x] + ", insidemethod=" + insidemethod);
+                    if (UxfLog.isDebug()) {
+                        UxfLog.debug("methods[x]="+methodline + ", insidemethod=" + insidemethod);
+                    }
                     
                     // Print Javadoc message only (no parameters yet) with correct indentation
-                    if (methods[x].contains("//JAVADOC")) {
-                        System.out.println("METHOD " + methods[x]);
-                        String[] line = methods[x].split("//JAVADOC");
-                        method = "\n" + SPACER +"/**\n" + SPACER + " * " + (line.length>1?line[1]:autocomment) + "\n" + SPACER + " */\n";
-                        method += SPACER + modifier + line[0].trim();
+                    if (methodline.contains("//JAVADOC")) {
+                        UxfLog.debug("METHOD ", methodline);
+                        String signature = UxfPanelTokenizer.segment(methodline, 0, methodline.length(), "//JAVADOC", 0);
+                        String javadoc = UxfPanelTokenizer.segment(methodline, 0, methodline.length(), "//JAVADOC", 1);
+                        method = "\n" + SPACER +"/**\n" + SPACER + " * " + (javadoc != null?javadoc:autocomment) + "\n" + SPACER + " */\n";
+                        method += SPACER + modifier + (signature != null?signature.trim():"");
+                        body.setLength(0);
+                        body.append(method.replace("//END", ""));
+                        methodLines.clear();
+                        methodLines.add(line);
                         insidemethod = true;
                         continue;
                     }
                     
                     // Print method signature, and loop until //END found
                     if (insidemethod) {
-                        method += "\n" + SPACER + methods[x];
-                        if (methods[x].contains("//END")) {           
-                            method = method.replace("//END", "");
-                            uxf.addMethod(method);
+                        // "//END" is removed line by line, it cannot span two lines
+                        boolean last = methodline.contains("//END");
+                        body.append('\n').append(SPACER).append(last ? methodline.replace("//END", "") : methodline);
+                        methodLines.add(line);
+                        if (last) {           
+                            uxf.addMethod(body.toString(), toArray(methodLines));
                             method = "METHOD_NOT_FOUND";
                             insidemethod = false;
                         }
                     } else {
                         // otherwise just print it
                         method = "\n" + SPACER +"/**\n" + SPACER + " * " + autocomment + "\n" + SPACER + " */\n";
-                        method += SPACER + modifier + methods[x];
-                        uxf.addMethod(method);
+                        method += SPACER + modifier + methodline;
+                        uxf.addMethod(method, new int[] { line });
                     }
                 }
             }
         }
         
-        // Split on "Responsibilities" to get comments section
-        sections = rawtext_.split("Responsibilities");
-        if (sections.length > 1) {
-            String comments = sections[1];
-            comments = comments.replaceAll("--", "+");
-            
-            // Comment lines
-            String [] commentlines = comments.split("\n");
-            StringBuffer formattedcomments = new StringBuffer();
-            for (int x=0; x<commentlines.length; x++) {
-                if (!commentlines[x].isEmpty()) {
+        // Comments follow "Responsibilities", "--" list markers become "+"
+        if (tokens.hasComments()) {
+            int end = tokens.commentsEnd();
+            StringBuilder formattedcomments = new StringBuilder();
+            for (int pos = tokens.commentsStart(); pos <= end; ) {
+                int lineEnd = UxfPanelTokenizer.lineEnd(rawtext_, pos, end);
+                if (lineEnd > pos) {
                     formattedcomments.append(" * ");
-                    formattedcomments.append(commentlines[x]);
+                    for (int x = pos; x < lineEnd; x++) {
+                        char c = rawtext_.charAt(x);
+                        if (c == '-' && x + 1 < lineEnd && rawtext_.charAt(x + 1) == '-') {
+                            formattedcomments.append('+');
+                            x++;
+                        } else {
+                            formattedcomments.append(c);
+                        }
+                    }
                     formattedcomments.append("\n");
                 }
+                pos = lineEnd + 1;
             }            
             uxf.setComments(formattedcomments.toString());
         }
@@ -323,6 +385,7 @@ public class UxfJavaClass {
      *            the packageName to set
      */
     public void setPackageName(String packageName) {
+        _diagramPackageName = packageName;
         _packageName = _packagePrefix + "." + packageName;
     }
 
@@ -336,6 +399,15 @@ public class UxfJavaClass {
         return _packageName;
     }
 
+    /**
+     * Gets the package name as given in the diagram, without the package prefix.
+     * 
+     * @return the diagram package name, or null if the panel has no header
+     */
+    public String getDiagramPackageName() {
+        return _diagramPackageName;
+    }
+
 
     /**
      * Sets the comments.
@@ -365,7 +437,20 @@ public class UxfJavaClass {
      *            method to add
      */
     public void addMethod(String method_) {
+        addMethod(method_, new int[0]);
+    }
+
+    /**
+     * Adds the method, remembering where it comes from.
+     * 
+     * @param method_
+     *            method to add
+     * @param panelLines_
+     *            panel line of the signature and of each body line
+     */
+    public void addMethod(String method_, int[] panelLines_) {
         _methods.add(method_);
+        _methodLines.add(panelLines_);
     }
 
     /**
@@ -375,7 +460,20 @@ public class UxfJavaClass {
      *            field to add
      */
     public void addField(String field_) {
+        addField(field_, 0);
+    }
+
+    /**
+     * Adds the field, remembering where it comes from.
+     * 
+     * @param field_
+     *            field to add
+     * @param panelLine_
+     *            panel line of the field (1 based, 0 if unknown)
+     */
+    public void addField(String field_, int panelLine_) {
         _fields.add(field_);
+        _fieldLines.add(Integer.valueOf(panelLine_));
     }
 
     /**
@@ -386,13 +484,135 @@ public class UxfJavaClass {
     public ArrayList<String> getMethods() {
         return _methods;
     }
+
+    /**
+     * Gets the panel lines of each method's signature and body.
+     * 
+     * @return the method lines
+     */
+    public ArrayList<int[]> getMethodLines() {
+        return _methodLines;
+    }
+
+    /**
+     * Gets the fields.
+     * 
+     * @return the fields
+     */
+    public ArrayList<String> getFields() {
+        return _fields;
+    }
+
+    /**
+     * Gets the panel line of each field.
+     * 
+     * @return the field lines
+     */
+    public ArrayList<Integer> getFieldLines() {
+        return _fieldLines;
+    }
     
     
     /**
-     * List of import package names
+     * List of import package names. Set per run (see parse()), so classes of
+     * different runs can be generated at the same time.
      */
-    protected static ArrayList<String> _importPackages = new ArrayList<String>();
+    protected ArrayList<String> _importPackages = new ArrayList<String>();
+    
     
+    /**
+     * Sets the import package names.
+     * 
+     * @param importPackages_
+     *            the import package names
+     */
+    public void setImportPackages(ArrayList<String> importPackages_) {
+        _importPackages = importPackages_;
+    }
+
+
+    /**
+     * Gets the import package names.
+     * 
+     * @return the import package names
+     */
+    public ArrayList<String> getImportPackages() {
+        return _importPackages;
+    }
+    
+    
+    /**
+     * Index of the diagram classes, for single-type imports (see UxfTypeIndex).
+     * Null to import every import package with ".*".
+     */
+    protected UxfTypeIndex _typeIndex = null;
+    
+    
+    /**
+     * Sets the type index.
+     * 
+     * @param typeIndex_
+     *            the type index, or null for wildcard imports
+     */
+    public void setTypeIndex(UxfTypeIndex typeIndex_) {
+        _typeIndex = typeIndex_;
+    }
+
+
+    /**
+     * Gets the type index.
+     * 
+     * @return the type index, or null for wildcard imports
+     */
+    public UxfTypeIndex getTypeIndex() {
+        return _typeIndex;
+    }
+    
+    
+    /**
+     * The layout of the java source (see UxfTemplate). Null for the default layout.
+     */
+    protected UxfTemplate _template = null;
+    
+    
+    /**
+     * Sets the template.
+     * 
+     * @param template_
+     *            the template, or null for the default layout
+     */
+    public void setTemplate(UxfTemplate template_) {
+        _template = template_;
+    }
+
+
+    /**
+     * Gets the template.
+     * 
+     * @return the template used by emit()
+     */
+    public UxfTemplate getTemplate() {
+        return (_template != null) ? _template : UxfTemplate.getDefault();
+    }
+
+
+    /**
+     * Gets the imports emitted for this class.
+     * 
+     * @return the imports, e.g. "java.util.*"
+     */
+    public List<String> getImports() {
+        if (_typeIndex != null) {
+            return _typeIndex.imports(this);
+        }
+        List<String> imports = new ArrayList<String>(_importPackages.size());
+        for (String imp : _importPackages) {
+            imports.add(imp + ".*");
+        }
+        return imports;
+    }
+    
+
     /**
      * Write out Java class definition.
      * 
@@ -400,79 +620,154 @@ public class UxfJavaClass {
      * @see java.lang.Object#toString()
      */
     public String toString() {
-        StringBuffer buf = new StringBuffer();
-        buf.append("/**\n");
-        buf.append(" *\n"); 
-        buf.append(" */\n");
-        buf.append("package " + _packageName + ";\n\n");
-        for (String imp : _importPackages) {
-            buf.append("import " + imp + ".*;\n");
-        }        
-        buf.append("/**\n");
-        buf.append(" * " + _className + "\n");
-        buf.append(" *\n");
-        buf.append(_comments);
-        buf.append(" */\n");
-        buf.append("public " + _classDefinition + " {\n");
-        if (!_fields.isEmpty()) {
-            buf.append("\n");
-        }
-        for (String field : _fields) {
-            buf.append(SPACER + field + "\n");
-        }      
-        for (String method : _methods) {
-            buf.append(method + "\n");
+        StringBuilder buf = new StringBuilder(1024);
+        try {
+            emit(buf);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+            throw new IllegalStateException(e);
         }
-        buf.append("\n");        
-        buf.append("}\n");
         return buf.toString();
     }
     
     /**
-     * Prints the array.
+     * Write out Java class definition, piece by piece, to any Appendable.
+     * 
+     * @param out_
+     *            where the source goes
+     * @throws IOException
+     *             if out_ cannot be written
+     */
+    public void emit(Appendable out_) throws IOException {
+        getTemplate().emit(this, out_);
+    }
+    
+    /**
+     * Gets the panel line each line of the emitted source comes from, following
+     * the layout of the template. Lines that do not come from a field or method map
+     * to the class header (1), the package line maps to the ::package line (2).
      * 
-     * @param array
-     *            the array
+     * @return panel line (1 based) by source line (index 0 is source line 1)
      */
-    private static void printArray(String[] array) {
-        System.out.println("[");
-        for (int x=0; x<array.length; x++) {        
-            System.out.println(((x != 0 )?",\n":"") + array[x]);            
+    public int[] getPanelLines() {
+        return getTemplate().panelLines(this);
+    }
+    
+    /**
+     * Write out Java class definition as UTF-8 to a channel, through the 
+     * reused buffers of the current thread.
+     * 
+     * @param channel_
+     *            where the source goes
+     * @return number of bytes written
+     * @throws IOException
+     *             if channel_ cannot be written
+     */
+    public int emit(WritableByteChannel channel_) throws IOException {
+        UxfSourceBuffer buffer = UxfSourceBuffer.get();
+        StringBuilder chars = buffer.chars();
+        emit(chars);
+        return buffer.write(chars, channel_);
+    }
+    
+    /**
+     * Converts panel line numbers to an array.
+     * 
+     * @param lines_
+     *            the line numbers
+     * @return the array
+     */
+    private static int[] toArray(ArrayList<Integer> lines_) {
+        int[] array = new int[lines_.size()];
+        for (int x = 0; x < array.length; x++) {
+            array[x] = lines_.get(x).intValue();
+        }
+        return array;
+    }
+    
+    /**
+     * Prints the parts of a range split at a separator, as split() would give them.
+     * 
+     * @param text_
+     *            the text
+     * @param from_
+     *            the range start
+     * @param end_
+     *            the range end (exclusive)
+     * @param separator_
+     *            the literal separator
+     */
+    private static void printSegments(String text_, int from_, int end_, String separator_) {
+        UxfLog.debug("[");
+        String part;
+        for (int x=0; (part = UxfPanelTokenizer.segment(text_, from_, end_, separator_, x)) != null; x++) {        
+            UxfLog.debug(((x != 0 )?",\n":"") + part);            
         }
-        System.out.println("]");
+        UxfLog.debug("]");
+    }
+    
+    /**
+     * Gets the java source file this class is written to.
+     * 
+     * @return the class file
+     */
+    public File getClassFile() {
+        String dirname = _destinationDir + File.separator + _packageName.replace(".", File.separator);
+        return new File(dirname + File.separator + _className + ".java");
     }
     
     /**
      * Writeclassfile.
      */
     public void writeclassfile() {
-        String dirname = _destinationDir + File.separator + _packageName.replace(".", File.separator);
-        String filename = dirname + File.separator + _className + ".java";
-        
-        File dir = new File(dirname);
-        File toFile = new File(filename);
-                
-        FileOutputStream to = null;
+        writeclassfile(new UxfOutputWriter());
+    }
+    
+    /**
+     * Writeclassfile, leaving the file alone if its content is unchanged.
+     * 
+     * @param writer_
+     *            the output writer (counts written and unchanged files)
+     * @return the write result, or null if the file could not be written
+     */
+    public UxfOutputWriter.Result writeclassfile(UxfOutputWriter writer_) {
+        UxfSourceBuffer buffer = UxfSourceBuffer.get();
+        StringBuilder chars = buffer.chars();
         try {
-            dir.mkdirs();
-            toFile.createNewFile();
-            to = new FileOutputStream(toFile);
-            to.write(toString().getBytes());
-            System.out.println("Wrote" + filename);
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+            emit(chars);
         } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-          if (to != null)
-            try {              
-              to.close();
-            } catch (IOException e) {
-              ;
+            // StringBuilder does not throw
+            throw new IllegalStateException(e);
+        }
+        return writeclassfile(writer_, buffer.encode(chars));
+    }
+    
+    /**
+     * Writeclassfile with an already emitted and encoded source.
+     * 
+     * @param writer_
+     *            the output writer (counts written and unchanged files)
+     * @param content_
+     *            the encoded source (see emit())
+     * @return the write result, or null if the file could not be written
+     */
+    public UxfOutputWriter.Result writeclassfile(UxfOutputWriter writer_, ByteBuffer content_) {
+        File toFile = getClassFile();
+        String filename = toFile.getPath();
+        try {
+            UxfOutputWriter.Result result = writer_.write(toFile, content_);
+            if (result == UxfOutputWriter.Result.WRITTEN) {
+                UxfLog.info("Wrote", filename);
+            } else if (result == UxfOutputWriter.Result.QUEUED) {
+                UxfLog.info("Queued", filename);
+            } else {
+                UxfLog.info("Unchanged", filename);
             }
+            return result;
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        
-        
+        return null;
     }
 
 
@@ -0,0 +1,307 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * UxfLog. Leveled console output of the parser (see --log-level, --log-async).
+ * Debug output (the parse trace and every generated source) is off by default;
+ * callers check isDebug() before building a debug message, so nothing is built
+ * unless it is printed. The messages with arguments put them together only
+ * once the level is known to be on.
+ * By default messages are printed on the calling thread. The async appender
+ * hands them to one background thread through a bounded queue, so workers do
+ * not wait on the console; flush() waits until everything queued is printed.
+ *
+ */
+public class UxfLog {
+
+    /**
+     * Log levels, most verbose first.
+     */
+    public enum Level {
+        /** Parse trace and generated sources. */
+        DEBUG,
+        /** What was written, summaries. */
+        INFO,
+        /** Problems that do not stop a run. */
+        WARN,
+        /** Failures. */
+        ERROR,
+        /** Nothing. */
+        OFF
+    }
+
+    /**
+     * Messages the async appender holds before callers wait.
+     */
+    private static final int QUEUE_CAPACITY = 4096;
+
+    /**
+     * The _level, read on every call.
+     */
+    private static volatile Level _level = Level.INFO;
+
+    /**
+     * The _queue of the async appender, null to print on the calling thread.
+     */
+    private static volatile BlockingQueue<Object> _queue = null;
+
+    /**
+     * No instances.
+     */
+    private UxfLog() {
+    }
+
+
+    /**
+     * Sets the level.
+     *
+     * @param level_
+     *            the least severe level printed
+     */
+    public static void setLevel(Level level_) {
+        _level = level_;
+    }
+
+
+    /**
+     * Sets the level by name.
+     *
+     * @param name_
+     *            debug, info, warn, error or off
+     * @throws IllegalArgumentException
+     *             if there is no such level
+     */
+    public static void setLevel(String name_) {
+        for (Level level : Level.values()) {
+            if (level.name().equalsIgnoreCase(name_)) {
+                setLevel(level);
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Log level must be debug, info, warn, error or off - " + name_);
+    }
+
+
+    /**
+     * Gets the level.
+     *
+     * @return the least severe level printed
+     */
+    public static Level getLevel() {
+        return _level;
+    }
+
+
+    /**
+     * Checks if a level is printed.
+     *
+     * @param level_
+     *            the level
+     * @return true if messages of level_ are printed
+     */
+    public static boolean isEnabled(Level level_) {
+        return level_.compareTo(_level) >= 0 && level_ != Level.OFF;
+    }
+
+
+    /**
+     * Checks if debug messages are printed. Check this before building a debug message.
+     *
+     * @return true if debug is on
+     */
+    public static boolean isDebug() {
+        return _level == Level.DEBUG;
+    }
+
+
+    /**
+     * Print a debug message.
+     *
+     * @param message_
+     *            the message
+     */
+    public static void debug(String message_) {
+        if (isDebug()) {
+            append(message_);
+        }
+    }
+
+
+    /**
+     * Print a debug message made of two parts, put together only if debug is on.
+     *
+     * @param message_
+     *            the message
+     * @param arg_
+     *            appended to the message
+     */
+    public static void debug(String message_, Object arg_) {
+        if (isDebug()) {
+            append(message_ + arg_);
+        }
+    }
+
+
+    /**
+     * Print an info message.
+     *
+     * @param message_
+     *            the message
+     */
+    public static void info(String message_) {
+        if (isEnabled(Level.INFO)) {
+            append(message_);
+        }
+    }
+
+
+    /**
+     * Print an info message made of two parts, put together only if info is on.
+     *
+     * @param message_
+     *            the message
+     * @param arg_
+     *            appended to the message
+     */
+    public static void info(String message_, Object arg_) {
+        if (isEnabled(Level.INFO)) {
+            append(message_ + arg_);
+        }
+    }
+
+
+    /**
+     * Print a warning made of two parts, put together only if warnings are on.
+     *
+     * @param message_
+     *            the message
+     * @param arg_
+     *            appended to the message
+     */
+    public static void warn(String message_, Object arg_) {
+        if (isEnabled(Level.WARN)) {
+            append(message_ + arg_);
+        }
+    }
+
+
+    /**
+     * Turn the async appender on or off. Turning it off prints what is
+     * queued first.
+     *
+     * @param async_
+     *            true to print on a background thread
+     */
+    public static synchronized void setAsync(boolean async_) {
+        if (async_ && _queue == null) {
+            final BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(QUEUE_CAPACITY);
+            Thread appender = new Thread(new Runnable() {
+                public void run() {
+                    drain(queue);
+                }
+            }, "uxf-log");
+            appender.setDaemon(true);
+            appender.start();
+            _queue = queue;
+
+            // Daemon threads die with the JVM, print what is left first
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                public void run() {
+                    flush();
+                }
+            }, "uxf-log-flush"));
+        } else if (!async_ && _queue != null) {
+            flush();
+            BlockingQueue<Object> queue = _queue;
+            _queue = null;
+            put(queue, queue);
+        }
+    }
+
+
+    /**
+     * Wait until every queued message is printed. Returns at once without the
+     * async appender.
+     */
+    public static void flush() {
+        BlockingQueue<Object> queue = _queue;
+        if (queue == null) {
+            System.out.flush();
+            return;
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        put(queue, done);
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Print a message now, or queue it for the async appender.
+     *
+     * @param message_
+     *            the message
+     */
+    private static void append(String message_) {
+        BlockingQueue<Object> queue = _queue;
+        if (queue == null) {
+            System.out.println(message_);
+        } else {
+            put(queue, message_);
+        }
+    }
+
+
+    /**
+     * Queue a message or marker, waiting while the queue is full.
+     *
+     * @param queue_
+     *            the queue
+     * @param item_
+     *            a message, a flush marker, or the queue itself to stop
+     */
+    private static void put(BlockingQueue<Object> queue_, Object item_) {
+        try {
+            queue_.put(item_);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Print queued messages until stopped: the body of the appender thread.
+     *
+     * @param queue_
+     *            the queue
+     */
+    private static void drain(BlockingQueue<Object> queue_) {
+        while (true) {
+            Object item;
+            try {
+                item = queue_.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (item == queue_) {
+                System.out.flush();
+                return;
+            }
+            if (item instanceof CountDownLatch) {
+                System.out.flush();
+                ((CountDownLatch) item).countDown();
+                continue;
+            }
+            System.out.println(item);
+        }
+    }
+}
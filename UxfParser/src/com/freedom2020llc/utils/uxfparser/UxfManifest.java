@@ -0,0 +1,408 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * UxfManifest. Remembers, for one diagram and output directory, which java file
+ * each panel produced, keyed by a hash of the raw panel text, package prefix and
+ * imports list. Used by incremental generation to skip unchanged panels and to
+ * remove the files of panels deleted from the diagram.
+ * The manifest is a text file, one "hash path" line per panel, stored in
+ * [outputJavaSrcDir]/.uxfparser/[diagram]-[path hash].manifest (see key()), so
+ * diagrams of the same name in different directories do not share one.
+ *
+ */
+public class UxfManifest {
+
+    /**
+     * Directory below the output directory holding the manifests.
+     */
+    public static final String MANIFEST_DIR = ".uxfparser";
+
+    /**
+     * The first line of every manifest.
+     */
+    private static final String HEADER = "# uxfparser manifest 2";
+
+    /**
+     * The _file.
+     */
+    private final File _file;
+
+    /**
+     * The _output dir.
+     */
+    private final File _outputDir;
+
+    /**
+     * Panels of the previous run, hash to relative path.
+     */
+    private final HashMap<String, String> _previous = new HashMap<String, String>();
+
+    /**
+     * Panels of this run by sequence: hash, relative path and "skipped" or "written".
+     */
+    private final ConcurrentSkipListMap<Integer, String[]> _current = new ConcurrentSkipListMap<Integer, String[]>();
+
+    /**
+     * The _force all flag, set to regenerate every panel.
+     */
+    private volatile boolean _forceAll = false;
+
+    /**
+     * UxfManifest constructor.
+     *
+     * @param file_
+     *            the manifest file
+     * @param outputDir_
+     *            the output java src dir
+     */
+    protected UxfManifest(File file_, File outputDir_) {
+        _file = file_;
+        _outputDir = outputDir_;
+    }
+
+
+    /**
+     * Load the manifest of a diagram, empty if there is none yet.
+     *
+     * @param outputJavaSrcDir_
+     *            the output java src dir
+     * @param uxfFilename_
+     *            the diagram filename
+     * @return the manifest
+     * @throws IOException
+     *             if the manifest exists but cannot be read
+     */
+    public static UxfManifest load(String outputJavaSrcDir_, String uxfFilename_) throws IOException {
+        return load(outputJavaSrcDir_, uxfFilename_, "");
+    }
+
+
+    /**
+     * Load a manifest of a diagram, empty if there is none yet. A run that
+     * generates only some panels (a shard or a filter) keeps its own manifest.
+     *
+     * @param outputJavaSrcDir_
+     *            the output java src dir
+     * @param uxfFilename_
+     *            the diagram filename
+     * @param variant_
+     *            appended to the manifest name, e.g. ".shard-2-of-4", "" for a full run
+     * @return the manifest
+     * @throws IOException
+     *             if the manifest exists but cannot be read
+     */
+    public static UxfManifest load(String outputJavaSrcDir_, String uxfFilename_, String variant_) throws IOException {
+        File outputDir = new File(outputJavaSrcDir_);
+        UxfManifest manifest = new UxfManifest(new File(new File(outputDir, MANIFEST_DIR), key(uxfFilename_) + variant_ + ".manifest"), outputDir);
+        if (manifest._file.isFile()) {
+            BufferedReader reader = Files.newBufferedReader(manifest._file.toPath(), StandardCharsets.UTF_8);
+            try {
+                String line = reader.readLine();
+                if (!HEADER.equals(line)) {
+                    // Unknown format: treat as no manifest, everything is regenerated
+                    return manifest;
+                }
+                while ((line = reader.readLine()) != null) {
+                    int space = line.indexOf(' ');
+                    if (space > 0) {
+                        manifest._previous.put(line.substring(0, space), line.substring(space + 1));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return manifest;
+    }
+
+
+    /**
+     * Gets the name the files of a diagram are kept under in an output
+     * directory: the file name and a hash of the absolute path, e.g.
+     * "model.uxf-1a2b3c4d5e6f7a8b". Diagrams of the same name in different
+     * directories of a batch get different names.
+     *
+     * @param uxfFilename_
+     *            the diagram filename
+     * @return the name
+     */
+    public static String key(String uxfFilename_) {
+        File diagram = new File(uxfFilename_);
+        String path = diagram.getAbsoluteFile().toPath().normalize().toString();
+        byte[] hash = newDigest().digest(path.getBytes(StandardCharsets.UTF_8));
+        StringBuilder key = new StringBuilder(diagram.getName()).append('-');
+        for (int x = 0; x < 8; x++) {
+            key.append(Character.forDigit((hash[x] >> 4) & 0xf, 16));
+            key.append(Character.forDigit(hash[x] & 0xf, 16));
+        }
+        return key.toString();
+    }
+
+
+    /**
+     * Hash of everything a panel's java file depends on.
+     *
+     * @param packagePrefix_
+     *            the package prefix
+     * @param importsList_
+     *            the imports list
+     * @param rawtext_
+     *            the raw panel text
+     * @return hex hash
+     */
+    public static String hash(String packagePrefix_, List<String> importsList_, String rawtext_) {
+        return hash(packagePrefix_, importsList_, digest(rawtext_));
+    }
+
+
+    /**
+     * Digest of a raw panel text, kept in snapshots (see UxfSnapshot) so panels
+     * can be hashed without their text.
+     *
+     * @param rawtext_
+     *            the raw panel text
+     * @return the SHA-256 digest
+     */
+    public static byte[] digest(String rawtext_) {
+        MessageDigest digest = newDigest();
+        return digest.digest(rawtext_.getBytes(StandardCharsets.UTF_8));
+    }
+
+
+    /**
+     * Hash of everything a panel's java file depends on.
+     *
+     * @param packagePrefix_
+     *            the package prefix
+     * @param importsList_
+     *            the imports list
+     * @param rawDigest_
+     *            the digest of the raw panel text (see digest())
+     * @return hex hash
+     */
+    public static String hash(String packagePrefix_, List<String> importsList_, byte[] rawDigest_) {
+        return hash(packagePrefix_, importsList_, null, null, rawDigest_);
+    }
+
+
+    /**
+     * Hash of everything a panel's java file depends on, with a type index and a template.
+     *
+     * @param packagePrefix_
+     *            the package prefix
+     * @param importsList_
+     *            the imports list
+     * @param typeIndex_
+     *            the type index the imports are chosen from, or null
+     * @param template_
+     *            the template of the java files, or null for the default
+     * @param rawDigest_
+     *            the digest of the raw panel text (see digest())
+     * @return hex hash
+     */
+    public static String hash(String packagePrefix_, List<String> importsList_, UxfTypeIndex typeIndex_,
+            UxfTemplate template_, byte[] rawDigest_) {
+        MessageDigest digest = newDigest();
+        digest.update(String.valueOf(packagePrefix_).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        if (importsList_ != null) {
+            for (String imp : importsList_) {
+                digest.update(imp.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) ';');
+            }
+        }
+        digest.update((byte) 0);
+        if (typeIndex_ != null) {
+            digest.update(typeIndex_.getDigest().getBytes(StandardCharsets.UTF_8));
+        }
+        if (template_ != null && !template_.isDefault()) {
+            digest.update(template_.getDigest().getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update(rawDigest_);
+
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+
+    /**
+     * Creates a SHA-256 digest.
+     *
+     * @return the digest
+     */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    /**
+     * Checks if a panel is unchanged since the last run and its file still exists.
+     *
+     * @param hash_
+     *            the panel hash
+     * @return true if the panel can be skipped
+     */
+    public boolean isUnchanged(String hash_) {
+        if (_forceAll) {
+            return false;
+        }
+        String path = _previous.get(hash_);
+        return path != null && new File(_outputDir, path).isFile();
+    }
+
+
+    /**
+     * Record a panel skipped because it is unchanged.
+     *
+     * @param sequence_
+     *            the position of the panel in the diagram
+     * @param hash_
+     *            the panel hash
+     */
+    public void recordUnchanged(int sequence_, String hash_) {
+        _current.put(sequence_, new String[] { hash_, _previous.get(hash_), "skipped" });
+    }
+
+
+    /**
+     * Record a panel written in this run.
+     *
+     * @param sequence_
+     *            the position of the panel in the diagram
+     * @param hash_
+     *            the panel hash
+     * @param classFile_
+     *            the file written
+     */
+    public void record(int sequence_, String hash_, File classFile_) {
+        String path = _outputDir.getAbsoluteFile().toPath().normalize()
+                .relativize(classFile_.getAbsoluteFile().toPath().normalize())
+                .toString().replace(File.separatorChar, '/');
+        _current.put(sequence_, new String[] { hash_, path, "written" });
+    }
+
+
+    /**
+     * Checks if a file written in this run is also produced by a later, skipped
+     * panel. The later panel must win, so the diagram has to be run again in full.
+     *
+     * @return true if there is a conflict
+     */
+    public boolean hasConflict() {
+        Map<String, String> lastByPath = new HashMap<String, String>();
+        HashSet<String> written = new HashSet<String>();
+        for (String[] entry : _current.values()) {
+            lastByPath.put(entry[1], entry[2]);
+            if ("written".equals(entry[2])) {
+                written.add(entry[1]);
+            }
+        }
+        for (String path : written) {
+            if ("skipped".equals(lastByPath.get(path))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Forget this run and regenerate every panel on the next one. The previous
+     * run is kept, so deleted panels are still removed.
+     */
+    public void forceAll() {
+        _forceAll = true;
+        _current.clear();
+    }
+
+
+    /**
+     * Delete the files of panels that were in the previous run but not in this one.
+     *
+     * @param writer_
+     *            the output writer (counts deleted files)
+     * @return number of files deleted
+     */
+    public int removeDeleted(UxfOutputWriter writer_) {
+        HashSet<String> paths = new HashSet<String>();
+        for (String[] entry : _current.values()) {
+            paths.add(entry[1]);
+        }
+        int deleted = 0;
+        for (String path : new HashSet<String>(_previous.values())) {
+            if (!paths.contains(path) && writer_.delete(new File(_outputDir, path))) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+
+    /**
+     * Gets the number of panels skipped in this run.
+     *
+     * @return the skipped count
+     */
+    public int getSkippedCount() {
+        int skipped = 0;
+        for (String[] entry : _current.values()) {
+            if ("skipped".equals(entry[2])) {
+                skipped++;
+            }
+        }
+        return skipped;
+    }
+
+
+    /**
+     * Save this run as the manifest for the next one.
+     *
+     * @throws IOException
+     *             if the manifest cannot be written
+     */
+    public void save() throws IOException {
+        File dir = _file.getParentFile();
+        dir.mkdirs();
+        File tmp = new File(dir, _file.getName() + ".tmp");
+        BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8);
+        try {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (String[] entry : _current.values()) {
+                writer.write(entry[0]);
+                writer.write(' ');
+                writer.write(entry[1]);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+        Files.move(tmp.toPath(), _file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,389 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+import java.util.ArrayList;
+
+/**
+ * UxfOptions. Settings for one generation run: where the java classes go,
+ * which package prefix and imports they get, and how the diagram is processed.
+ *
+ */
+public class UxfOptions {
+
+    /**
+     * The _output java src dir.
+     */
+    private String _outputJavaSrcDir = "";
+
+    /**
+     * The _output java package prefix.
+     */
+    private String _outputJavaPackagePrefix = "";
+
+    /**
+     * The _imports list.
+     */
+    private ArrayList<String> _importsList = new ArrayList<String>();
+
+    /**
+     * The _use dom flag.
+     */
+    private boolean _useDom = false;
+
+    /**
+     * The _workers. 1 means serial generation.
+     */
+    private int _workers = 1;
+
+    /**
+     * The _incremental flag.
+     */
+    private boolean _incremental = false;
+
+    /**
+     * The _quiet flag.
+     */
+    private boolean _quiet = false;
+
+    /**
+     * The _snapshot flag.
+     */
+    private boolean _snapshot = false;
+
+    /**
+     * The _write threads, 0 to write on the generating threads.
+     */
+    private int _writeThreads = 0;
+
+    /**
+     * The _sync flag.
+     */
+    private boolean _sync = false;
+
+    /**
+     * The _type index, null for wildcard imports.
+     */
+    private UxfTypeIndex _typeIndex = null;
+
+    /**
+     * The _shard, null to generate every panel.
+     */
+    private UxfShard _shard = null;
+
+    /**
+     * The _filter, null to generate every panel.
+     */
+    private UxfPanelFilter _filter = null;
+
+    /**
+     * The _template, null for the default layout.
+     */
+    private UxfTemplate _template = null;
+
+    /**
+     * UxfOptions constructor.
+     *
+     * @param outputJavaSrcDir_
+     *            the output java src dir
+     * @param outputJavaPackagePrefix_
+     *            the output java package prefix
+     * @param importsList_
+     *            the imports list
+     */
+    public UxfOptions(String outputJavaSrcDir_, String outputJavaPackagePrefix_, ArrayList<String> importsList_) {
+        _outputJavaSrcDir = outputJavaSrcDir_;
+        _outputJavaPackagePrefix = outputJavaPackagePrefix_;
+        _importsList = importsList_;
+    }
+
+
+    /**
+     * Copy these options for another target, e.g. another diagram of a batch.
+     *
+     * @param outputJavaSrcDir_
+     *            the output java src dir
+     * @param outputJavaPackagePrefix_
+     *            the output java package prefix
+     * @param importsList_
+     *            the imports list
+     * @return the new options
+     */
+    public UxfOptions derive(String outputJavaSrcDir_, String outputJavaPackagePrefix_, ArrayList<String> importsList_) {
+        UxfOptions options = new UxfOptions(outputJavaSrcDir_, outputJavaPackagePrefix_, importsList_);
+        options._useDom = _useDom;
+        options._workers = _workers;
+        options._incremental = _incremental;
+        options._quiet = _quiet;
+        options._snapshot = _snapshot;
+        options._writeThreads = _writeThreads;
+        options._sync = _sync;
+        options._typeIndex = _typeIndex;
+        options._shard = _shard;
+        options._filter = _filter;
+        options._template = _template;
+        return options;
+    }
+
+
+    /**
+     * Gets the output java src dir.
+     *
+     * @return the output java src dir
+     */
+    public String getOutputJavaSrcDir() {
+        return _outputJavaSrcDir;
+    }
+
+
+    /**
+     * Gets the output java package prefix.
+     *
+     * @return the output java package prefix
+     */
+    public String getOutputJavaPackagePrefix() {
+        return _outputJavaPackagePrefix;
+    }
+
+
+    /**
+     * Gets the imports list.
+     *
+     * @return the imports list
+     */
+    public ArrayList<String> getImportsList() {
+        return _importsList;
+    }
+
+
+    /**
+     * Checks if the DOM reader is used instead of the streaming reader.
+     *
+     * @return true if the DOM reader is used
+     */
+    public boolean isUseDom() {
+        return _useDom;
+    }
+
+
+    /**
+     * Sets the use dom flag.
+     *
+     * @param useDom_
+     *            true to load the whole document as a DOM tree
+     */
+    public void setUseDom(boolean useDom_) {
+        _useDom = useDom_;
+    }
+
+
+    /**
+     * Gets the number of workers.
+     *
+     * @return the workers
+     */
+    public int getWorkers() {
+        return _workers;
+    }
+
+
+    /**
+     * Sets the number of workers. 0 or less means one per available processor.
+     *
+     * @param workers_
+     *            the workers
+     */
+    public void setWorkers(int workers_) {
+        _workers = (workers_ > 0) ? workers_ : Runtime.getRuntime().availableProcessors();
+    }
+
+
+    /**
+     * Checks if only panels changed since the last run are generated.
+     *
+     * @return true if incremental
+     */
+    public boolean isIncremental() {
+        return _incremental;
+    }
+
+
+    /**
+     * Sets the incremental flag.
+     *
+     * @param incremental_
+     *            true to skip panels unchanged since the last run (see UxfManifest)
+     */
+    public void setIncremental(boolean incremental_) {
+        _incremental = incremental_;
+    }
+
+
+    /**
+     * Checks if generated sources and written files are not printed.
+     *
+     * @return true if quiet
+     */
+    public boolean isQuiet() {
+        return _quiet;
+    }
+
+
+    /**
+     * Sets the quiet flag.
+     *
+     * @param quiet_
+     *            true to print nothing, e.g. when embedded (see UxfResult)
+     */
+    public void setQuiet(boolean quiet_) {
+        _quiet = quiet_;
+    }
+
+
+    /**
+     * Checks if the parsed classes are kept in, and read back from, a snapshot.
+     *
+     * @return true if a snapshot is used
+     */
+    public boolean isSnapshot() {
+        return _snapshot;
+    }
+
+
+    /**
+     * Sets the snapshot flag.
+     *
+     * @param snapshot_
+     *            true to skip XML reading and panel parsing while the diagram is unchanged (see UxfSnapshot)
+     */
+    public void setSnapshot(boolean snapshot_) {
+        _snapshot = snapshot_;
+    }
+
+
+    /**
+     * Gets the number of background writing threads.
+     *
+     * @return the write threads, 0 if files are written by the generating threads
+     */
+    public int getWriteThreads() {
+        return _writeThreads;
+    }
+
+
+    /**
+     * Sets the number of background writing threads (see UxfAsyncOutputWriter).
+     *
+     * @param writeThreads_
+     *            the write threads, 0 to write on the generating threads
+     */
+    public void setWriteThreads(int writeThreads_) {
+        _writeThreads = Math.max(0, writeThreads_);
+    }
+
+
+    /**
+     * Checks if written files are forced to disk at the end of the run.
+     *
+     * @return true if synced
+     */
+    public boolean isSync() {
+        return _sync;
+    }
+
+
+    /**
+     * Sets the sync flag.
+     *
+     * @param sync_
+     *            true to force all written files to disk in one batch when writing is done
+     */
+    public void setSync(boolean sync_) {
+        _sync = sync_;
+    }
+
+
+    /**
+     * Gets the index of the diagram classes, shared by all diagrams of a run.
+     *
+     * @return the type index, null if every import package is imported with ".*"
+     */
+    public UxfTypeIndex getTypeIndex() {
+        return _typeIndex;
+    }
+
+
+    /**
+     * Sets the type index.
+     *
+     * @param typeIndex_
+     *            the type index for single-type imports (see UxfTypeIndex), or null
+     */
+    public void setTypeIndex(UxfTypeIndex typeIndex_) {
+        _typeIndex = typeIndex_;
+    }
+
+
+    /**
+     * Gets the template of the generated java files.
+     *
+     * @return the template, null for the default layout
+     */
+    public UxfTemplate getTemplate() {
+        return _template;
+    }
+
+
+    /**
+     * Sets the template.
+     *
+     * @param template_
+     *            the template of the generated java files (see UxfTemplate), or null
+     */
+    public void setTemplate(UxfTemplate template_) {
+        _template = template_;
+    }
+
+
+    /**
+     * Gets the shard of the diagram panels generated.
+     *
+     * @return the shard, null if every panel is generated
+     */
+    public UxfShard getShard() {
+        return _shard;
+    }
+
+
+    /**
+     * Sets the shard.
+     *
+     * @param shard_
+     *            the shard to generate (see UxfShard), or null for all panels
+     */
+    public void setShard(UxfShard shard_) {
+        _shard = shard_;
+    }
+
+
+    /**
+     * Gets the filter selecting the diagram panels generated.
+     *
+     * @return the filter, null if every panel is generated
+     */
+    public UxfPanelFilter getFilter() {
+        return _filter;
+    }
+
+
+    /**
+     * Sets the filter.
+     *
+     * @param filter_
+     *            the filter of the panels to generate (see UxfPanelFilter), or null for all panels
+     */
+    public void setFilter(UxfPanelFilter filter_) {
+        _filter = filter_;
+    }
+}
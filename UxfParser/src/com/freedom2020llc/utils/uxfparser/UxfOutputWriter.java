@@ -0,0 +1,273 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * UxfOutputWriter. Writes generated java files only when their content changed,
+ * so unchanged files keep their modification time and build tools and IDEs do not
+ * recompile them. New content goes to a temp file that is then renamed over the
+ * target, so readers never see a half-written file.
+ * Directories are only created once per writer. With sync, written files are
+ * forced to disk in one batch when the writer is closed instead of one by one.
+ * Counts written, unchanged and deleted files; safe to share between threads.
+ *
+ */
+public class UxfOutputWriter {
+
+    /**
+     * Outcome of a write.
+     */
+    public enum Result {
+        /** The file was created or its content replaced. */
+        WRITTEN,
+        /** The file already had this content and was left alone. */
+        UNCHANGED,
+        /** The file is written in the background, see UxfAsyncOutputWriter. */
+        QUEUED
+    }
+
+    /**
+     * Create the writer the options ask for.
+     *
+     * @param options_
+     *            the options (write threads and sync)
+     * @return a new writer, to be closed by the caller
+     */
+    public static UxfOutputWriter create(UxfOptions options_) {
+        UxfOutputWriter writer = (options_.getWriteThreads() > 0) 
+                ? new UxfAsyncOutputWriter(options_.getWriteThreads()) : new UxfOutputWriter();
+        writer.setSync(options_.isSync());
+        return writer;
+    }
+
+    /**
+     * The _written count.
+     */
+    private final AtomicInteger _written = new AtomicInteger();
+
+    /**
+     * The _unchanged count.
+     */
+    private final AtomicInteger _unchanged = new AtomicInteger();
+
+    /**
+     * The _deleted count.
+     */
+    private final AtomicInteger _deleted = new AtomicInteger();
+
+    /**
+     * The _directories known to exist.
+     */
+    private final Set<File> _directories = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The _sync flag.
+     */
+    private volatile boolean _sync = false;
+
+    /**
+     * Files written since the last sync.
+     */
+    private final Queue<Path> _unsynced = new ConcurrentLinkedQueue<Path>();
+
+    /**
+     * Sets the sync flag.
+     *
+     * @param sync_
+     *            true to force written files to disk when the writer is closed
+     */
+    public void setSync(boolean sync_) {
+        _sync = sync_;
+    }
+
+
+    /**
+     * Write content to a file, unless the file already holds exactly this content.
+     *
+     * @param file_
+     *            the target file
+     * @param content_
+     *            the new content
+     * @return WRITTEN or UNCHANGED
+     * @throws IOException
+     *             if the file cannot be read or written
+     */
+    public Result write(File file_, byte[] content_) throws IOException {
+        return write(file_, ByteBuffer.wrap(content_));
+    }
+
+
+    /**
+     * Write content to a file, unless the file already holds exactly this content.
+     *
+     * @param file_
+     *            the target file
+     * @param content_
+     *            the new content, from position to limit (position is not changed)
+     * @return WRITTEN or UNCHANGED
+     * @throws IOException
+     *             if the file cannot be read or written
+     */
+    public Result write(File file_, ByteBuffer content_) throws IOException {
+
+        // Size check first (length is 0 for a new file), only read the old file when the size matches
+        if (file_.length() == content_.remaining() && file_.isFile() &&
+            ByteBuffer.wrap(Files.readAllBytes(file_.toPath())).equals(content_)) {
+            _unchanged.incrementAndGet();
+            return Result.UNCHANGED;
+        }
+
+        // Most classes share their package directory with others
+        File dir = file_.getAbsoluteFile().getParentFile();
+        if (!_directories.contains(dir)) {
+            dir.mkdirs();
+            _directories.add(dir);
+        }
+        File tmp = File.createTempFile(file_.getName(), ".tmp", dir);
+        try {
+            FileChannel to = new FileOutputStream(tmp).getChannel();
+            try {
+                ByteBuffer content = content_.duplicate();
+                while (content.hasRemaining()) {
+                    to.write(content);
+                }
+            } finally {
+                to.close();
+            }
+            try {
+                Files.move(tmp.toPath(), file_.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file_.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            // Only left behind if the write or the rename failed
+            tmp.delete();
+        }
+        if (_sync) {
+            _unsynced.add(file_.toPath());
+        }
+        _written.incrementAndGet();
+        return Result.WRITTEN;
+    }
+
+
+    /**
+     * Wait until every write is done. Writes are done when write() returns,
+     * see UxfAsyncOutputWriter for writes that are not.
+     *
+     * @throws IOException
+     *             if a background write failed
+     */
+    public void flush() throws IOException {
+        // Nothing in the background
+    }
+
+
+    /**
+     * Finish writing: wait for every write and, with sync, force the written
+     * files and their directories to disk.
+     *
+     * @throws IOException
+     *             if a write or the sync failed
+     */
+    public void close() throws IOException {
+        flush();
+        Path file;
+        while ((file = _unsynced.poll()) != null) {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+            try {
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        }
+        if (_sync) {
+            for (File dir : _directories) {
+                try {
+                    FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
+                    try {
+                        channel.force(true);
+                    } finally {
+                        channel.close();
+                    }
+                } catch (IOException e) {
+                    // Directories cannot be opened on every platform, e.g. Windows
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Delete a generated file.
+     *
+     * @param file_
+     *            the file
+     * @return true if the file existed and was deleted
+     */
+    public boolean delete(File file_) {
+        if (file_.delete()) {
+            _deleted.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Gets the number of files written.
+     *
+     * @return the written count
+     */
+    public int getWrittenCount() {
+        return _written.get();
+    }
+
+
+    /**
+     * Gets the number of files left alone because their content was unchanged.
+     *
+     * @return the unchanged count
+     */
+    public int getUnchangedCount() {
+        return _unchanged.get();
+    }
+
+
+    /**
+     * Gets the number of files deleted.
+     *
+     * @return the deleted count
+     */
+    public int getDeletedCount() {
+        return _deleted.get();
+    }
+
+
+    /**
+     * Counts as a single summary line.
+     *
+     * @return the summary
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return getWrittenCount() + " written, " + getUnchangedCount() + " unchanged, " + getDeletedCount() + " deleted";
+    }
+}
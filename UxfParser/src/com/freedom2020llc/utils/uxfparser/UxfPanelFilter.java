@@ -0,0 +1,184 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * UxfPanelFilter. Selects the panels of a diagram to generate (see --include,
+ * --exclude) by package and class name globs, matched against the panel header
+ * (see UxfPanelHeader) before the panel is parsed, so the panels left out are
+ * never tokenized or written. A glob with a "." matches "package.ClassName",
+ * the package as given in the diagram; a glob without one matches the class
+ * name in any package. "*" matches any part of a name between dots, "**" also
+ * across dots, "?" one character:
+ * <pre>
+ * model.*      the classes of package model
+ * model.**     the classes of package model and the packages below it
+ * *Dao         every class ending in Dao
+ * </pre>
+ * A panel is generated if it matches an include (or there is none) and matches
+ * no exclude. Panels without a class header are generated only if there is no
+ * include.
+ *
+ */
+public class UxfPanelFilter {
+
+    /**
+     * The _includes, compiled.
+     */
+    private final List<Pattern> _includes = new ArrayList<Pattern>();
+
+    /**
+     * The _excludes, compiled.
+     */
+    private final List<Pattern> _excludes = new ArrayList<Pattern>();
+
+    /**
+     * The _globs as given, for names and messages.
+     */
+    private final StringBuilder _spec = new StringBuilder();
+
+    /**
+     * UxfPanelFilter constructor, for a filter that accepts every panel.
+     */
+    public UxfPanelFilter() {
+    }
+
+
+    /**
+     * Add an include glob.
+     *
+     * @param glob_
+     *            the glob, e.g. "model.*"
+     * @throws IllegalArgumentException
+     *             if the glob is empty
+     */
+    public void include(String glob_) {
+        _includes.add(compile(glob_));
+        _spec.append(_spec.length() == 0 ? "" : " ").append("+").append(glob_);
+    }
+
+
+    /**
+     * Add an exclude glob.
+     *
+     * @param glob_
+     *            the glob, e.g. "*Test"
+     * @throws IllegalArgumentException
+     *             if the glob is empty
+     */
+    public void exclude(String glob_) {
+        _excludes.add(compile(glob_));
+        _spec.append(_spec.length() == 0 ? "" : " ").append("-").append(glob_);
+    }
+
+
+    /**
+     * Checks if there are no globs, i.e. every panel is accepted.
+     *
+     * @return true if the filter accepts everything
+     */
+    public boolean isEmpty() {
+        return _includes.isEmpty() && _excludes.isEmpty();
+    }
+
+
+    /**
+     * Checks if a panel is generated.
+     *
+     * @param header_
+     *            the panel header, or null
+     * @return true if the panel is generated
+     */
+    public boolean accepts(UxfPanelHeader header_) {
+        if (header_ == null) {
+            return _includes.isEmpty();
+        }
+        String qualifiedName = header_.getPackageName() + "." + header_.getClassName();
+        if (!_includes.isEmpty() && !matches(_includes, qualifiedName)) {
+            return false;
+        }
+        return !matches(_excludes, qualifiedName);
+    }
+
+
+    /**
+     * Gets the name used in file names, e.g. "filter-1a2b3c4d", the same for the same globs.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return "filter-" + String.format("%08x", _spec.toString().hashCode());
+    }
+
+
+    /**
+     * Checks if a name matches any of some patterns.
+     *
+     * @param patterns_
+     *            the patterns
+     * @param qualifiedName_
+     *            "package.ClassName"
+     * @return true if one matches
+     */
+    private static boolean matches(List<Pattern> patterns_, String qualifiedName_) {
+        for (Pattern pattern : patterns_) {
+            if (pattern.matcher(qualifiedName_).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Compile a glob to a pattern over "package.ClassName".
+     *
+     * @param glob_
+     *            the glob
+     * @return the pattern
+     * @throws IllegalArgumentException
+     *             if the glob is empty
+     */
+    private static Pattern compile(String glob_) {
+        String glob = (glob_ == null) ? "" : glob_.trim();
+        if (glob.isEmpty()) {
+            throw new IllegalArgumentException("Filter glob must not be empty");
+        }
+
+        // Package names are lower case in headers (see UxfPanelHeader.scan), class names as written
+        int lastDot = glob.lastIndexOf('.');
+        StringBuilder regex = new StringBuilder();
+        if (lastDot < 0) {
+            regex.append("(?:.*\\.)?");
+        } else {
+            glob = glob.substring(0, lastDot).toLowerCase() + glob.substring(lastDot);
+        }
+        for (int x = 0; x < glob.length(); x++) {
+            char c = glob.charAt(x);
+            if (c == '*' && x + 1 < glob.length() && glob.charAt(x + 1) == '*') {
+                regex.append(".*");
+                x++;
+            } else if (c == '*') {
+                regex.append("[^.]*");
+            } else if (c == '?') {
+                regex.append("[^.]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return _spec.toString();
+    }
+}
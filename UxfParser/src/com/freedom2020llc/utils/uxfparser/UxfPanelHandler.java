@@ -0,0 +1,33 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+/**
+ * UxfPanelHandler. Receives the raw text of each panel_attributes element
+ * as it is read from a UXF file (see UxfPanelReader).
+ *
+ */
+public interface UxfPanelHandler {
+
+    /**
+     * Called once for each panel_attributes element, in document order.
+     *
+     * @param rawtext_
+     *            the raw panel text, or null if the element has no text
+     */
+    public void panel(String rawtext_);
+
+    /**
+     * Called once for each panel_attributes element, in document order, by
+     * readers that know where the panel text starts.
+     *
+     * @param rawtext_
+     *            the raw panel text, or null if the element has no text
+     * @param line_
+     *            the line of the UXF file the text starts on, 0 if unknown
+     */
+    public default void panel(String rawtext_, int line_) {
+        panel(rawtext_);
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+/**
+ * UxfPanelHeader. The class name and package of a panel, read from the first
+ * line and the "::package" line of its header without tokenizing the rest of
+ * the panel. Gives the same names UxfJavaClass.parse() does, for work that
+ * needs to know every class of a diagram before generating any (see UxfTypeIndex).
+ *
+ */
+public class UxfPanelHeader {
+
+    /**
+     * The _class name.
+     */
+    private final String _className;
+
+    /**
+     * The _package name, as given in the diagram.
+     */
+    private final String _packageName;
+
+    /**
+     * UxfPanelHeader constructor.
+     *
+     * @param className_
+     *            the class name
+     * @param packageName_
+     *            the package name, without the package prefix
+     */
+    public UxfPanelHeader(String className_, String packageName_) {
+        _className = className_;
+        _packageName = packageName_;
+    }
+
+
+    /**
+     * Scan the header of a panel.
+     *
+     * @param rawtext_
+     *            the raw panel text
+     * @return the header, or null if the panel has no class header
+     */
+    public static UxfPanelHeader scan(String rawtext_) {
+        if (rawtext_ == null) {
+            return null;
+        }
+
+        // The header ends at the first "--", and needs something other than "--" after it
+        int headerEnd = rawtext_.indexOf(UxfPanelTokenizer.SECTION_SEPARATOR);
+        if (headerEnd < 0 || !hasSection(rawtext_, headerEnd)) {
+            return null;
+        }
+        String className = "CLASSNAME_NOT_FOUND";
+        String packageName = "PACKAGENAME_NOT_FOUND";
+
+        // Class name, as in UxfJavaClass.parse()
+        String firstLine = UxfPanelTokenizer.segment(rawtext_, 0, headerEnd, "\n", 0);
+        if (firstLine != null) {
+            String definition = firstLine.trim();
+            String classDefinition = definition.replace("{abstract}", "abstract class").replace("//", "");
+            if (classDefinition.contains("abstract")) {
+                className = UxfPanelTokenizer.segment(definition, 0, definition.length(), " ", 1);
+            } else {
+                className = UxfPanelTokenizer.segment(definition, 0, definition.length(), " ", 0);
+            }
+            className = (className != null) ? className.trim() : "";
+        }
+
+        // Package name
+        String secondLine = UxfPanelTokenizer.segment(rawtext_, 0, headerEnd, "\n", 1);
+        if (secondLine != null) {
+            String packagePart = UxfPanelTokenizer.segment(secondLine, 0, secondLine.length(), "::", 1);
+            if (packagePart != null) {
+                packageName = packagePart.trim().toLowerCase();
+            }
+        }
+        return new UxfPanelHeader(className, packageName);
+    }
+
+
+    /**
+     * Gets the class name.
+     *
+     * @return the class name
+     */
+    public String getClassName() {
+        return _className;
+    }
+
+
+    /**
+     * Gets the package name as given in the diagram, without the package prefix.
+     *
+     * @return the package name
+     */
+    public String getPackageName() {
+        return _packageName;
+    }
+
+
+    /**
+     * Gets the package name of the generated class.
+     *
+     * @param packagePrefix_
+     *            the package prefix
+     * @return the prefixed package name
+     */
+    public String getPackageName(String packagePrefix_) {
+        return packagePrefix_ + "." + _packageName;
+    }
+
+
+    /**
+     * Checks if anything but "--" follows the first "--", i.e. if split("--")
+     * gives more than one part.
+     *
+     * @param rawtext_
+     *            the raw panel text
+     * @param headerEnd_
+     *            offset of the first "--"
+     * @return true if the panel has a section after the header
+     */
+    private static boolean hasSection(String rawtext_, int headerEnd_) {
+        int x = headerEnd_;
+        while (rawtext_.startsWith(UxfPanelTokenizer.SECTION_SEPARATOR, x)) {
+            x += UxfPanelTokenizer.SECTION_SEPARATOR.length();
+        }
+        return x < rawtext_.length();
+    }
+
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return _packageName + "." + _className;
+    }
+}
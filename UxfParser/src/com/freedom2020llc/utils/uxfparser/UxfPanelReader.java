@@ -0,0 +1,274 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * UxfPanelReader. Reads the panel_attributes elements of a UXF file and hands
+ * each raw text block to a UxfPanelHandler.
+ * The streaming reader (StAX) only holds one panel in memory at a time, so memory
+ * use does not grow with the size of the diagram. The DOM reader loads the whole
+ * document first and is kept as a fallback to compare output against.
+ * Factories and document-loaders are kept per thread, so a long running JVM
+ * (--watch, --batch) does not set them up again for every diagram. Both are
+ * set up from one UxfXmlConfig: external references only through its entity
+ * catalog, and its processing limits.
+ *
+ */
+public class UxfPanelReader {
+
+    /**
+     * The UXF element holding the raw class text.
+     */
+    public static final String PANEL_ELEMENT = "panel_attributes";
+
+    /**
+     * Streaming factories, one per thread: created once, reused by every read.
+     */
+    private static final ThreadLocal<XMLInputFactory> INPUT_FACTORIES = new ThreadLocal<XMLInputFactory>();
+
+    /**
+     * Document loaders, one per thread: created once, reset before every read.
+     */
+    private static final ThreadLocal<DocumentBuilder> LOADERS = new ThreadLocal<DocumentBuilder>();
+
+    /**
+     * The configuration each thread's factory and document-loader were created with.
+     */
+    private static final ThreadLocal<UxfXmlConfig> CONFIGS = new ThreadLocal<UxfXmlConfig>();
+
+    /**
+     * The configuration of every reader.
+     */
+    private static volatile UxfXmlConfig _config = new UxfXmlConfig();
+
+    /**
+     * Sets the configuration of every reader, e.g. from the command line before
+     * the first diagram is read. Threads set up their factories again on their next read.
+     *
+     * @param config_
+     *            the configuration
+     */
+    public static void configure(UxfXmlConfig config_) {
+        _config = config_;
+    }
+
+
+    /**
+     * Gets the configuration of every reader.
+     *
+     * @return the configuration
+     */
+    public static UxfXmlConfig getConfig() {
+        return _config;
+    }
+
+
+    /**
+     * Stream all panels of a UXF file to the handler.
+     *
+     * @param uxfFilename_
+     *            the UXF filename, a .gz file or zipfile!entry (see UxfInput)
+     * @param handler_
+     *            the panel handler
+     * @return number of panels read
+     * @throws IOException
+     *             if the file cannot be read
+     * @throws XMLStreamException
+     *             if the file is not well formed
+     */
+    public static int read(String uxfFilename_, UxfPanelHandler handler_) throws IOException, XMLStreamException {
+        InputStream in = UxfInput.open(uxfFilename_);
+        try {
+            return read(in, UxfInput.systemId(uxfFilename_), handler_);
+        } finally {
+            in.close();
+        }
+    }
+
+
+    /**
+     * Stream all panels of a UXF document to the handler. Each panel text is handed
+     * on as soon as its end tag is read, and not kept afterwards.
+     *
+     * @param in_
+     *            the UXF document (not closed)
+     * @param systemId_
+     *            the system id used to resolve relative references, may be null
+     * @param handler_
+     *            the panel handler
+     * @return number of panels read
+     * @throws XMLStreamException
+     *             if the document is not well formed
+     */
+    public static int read(InputStream in_, String systemId_, UxfPanelHandler handler_) throws XMLStreamException {
+        XMLStreamReader reader = inputFactory().createXMLStreamReader(systemId_, in_);
+        int count = 0;
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT &&
+                    PANEL_ELEMENT.equals(reader.getLocalName())) {
+
+                    // Text may arrive in several chunks, getElementText() joins them
+                    int line = reader.getLocation().getLineNumber();
+                    String rawtext = reader.getElementText();
+                    handler_.panel(rawtext.isEmpty() ? null : rawtext, Math.max(0, line));
+                    count++;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+
+
+    /**
+     * Load the whole UXF file as a DOM tree, then hand each panel to the handler.
+     *
+     * @param uxfFilename_
+     *            the UXF filename, a .gz file or zipfile!entry (see UxfInput)
+     * @param handler_
+     *            the panel handler
+     * @return number of panels read
+     * @throws IOException
+     *             if the file cannot be read
+     * @throws SAXException
+     *             if the file is not well formed
+     * @throws ParserConfigurationException
+     *             if no document-loader can be created
+     */
+    public static int readDocument(String uxfFilename_, UxfPanelHandler handler_) throws IOException, SAXException, ParserConfigurationException {
+
+        // loading a DOM-tree...
+        InputStream in = UxfInput.open(uxfFilename_);
+        try {
+            return readDocument(in, UxfInput.systemId(uxfFilename_), handler_);
+        } finally {
+            in.close();
+        }
+    }
+
+
+    /**
+     * Load a whole UXF document as a DOM tree, then hand each panel to the handler.
+     *
+     * @param in_
+     *            the UXF document (not closed)
+     * @param systemId_
+     *            the system id used to resolve relative references, may be null
+     * @param handler_
+     *            the panel handler
+     * @return number of panels read
+     * @throws IOException
+     *             if the document cannot be read
+     * @throws SAXException
+     *             if the document is not well formed
+     * @throws ParserConfigurationException
+     *             if no document-loader can be created
+     */
+    public static int readDocument(InputStream in_, String systemId_, UxfPanelHandler handler_) throws IOException, SAXException, ParserConfigurationException {
+        return readDocument(systemId_ != null ? loader().parse(in_, systemId_) : loader().parse(in_), handler_);
+    }
+
+
+    /**
+     * Hand each panel of a loaded document to the handler.
+     *
+     * @param document_
+     *            the UXF document
+     * @param handler_
+     *            the panel handler
+     * @return number of panels read
+     */
+    private static int readDocument(Document document_, UxfPanelHandler handler_) {
+        // at last, we get a root element:
+        Element tree = document_.getDocumentElement();
+
+        // ... do something with document element ...
+        NodeList classList = tree.getElementsByTagName(PANEL_ELEMENT);
+        int count = 0;
+        for (int s = 0; s < classList.getLength(); s++) {
+
+            Node fstNode = classList.item(s);
+
+            if (fstNode.getNodeType() == Node.ELEMENT_NODE) {
+
+              // Read text node
+              Element fstElmnt = (Element) fstNode;
+              NodeList fstNm = fstElmnt.getChildNodes();
+              Node textNode = fstNm.item(0);
+              handler_.panel(textNode != null ? textNode.getNodeValue() : null);
+              count++;
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * Gets the streaming factory of this thread, creating it on first use.
+     *
+     * @return the factory
+     */
+    private static XMLInputFactory inputFactory() {
+        checkConfig();
+        XMLInputFactory factory = INPUT_FACTORIES.get();
+        if (factory == null) {
+            factory = _config.newInputFactory();
+            INPUT_FACTORIES.set(factory);
+        }
+        return factory;
+    }
+
+
+    /**
+     * Gets the document-loader of this thread, creating it on first use.
+     *
+     * @return the document-loader, reset
+     * @throws ParserConfigurationException
+     *             if no document-loader can be created
+     */
+    private static DocumentBuilder loader() throws ParserConfigurationException {
+        checkConfig();
+        DocumentBuilder loader = LOADERS.get();
+        if (loader == null) {
+            loader = _config.newDocumentBuilder();
+            LOADERS.set(loader);
+        } else {
+            // reset() may drop the entity resolver
+            loader.reset();
+            loader.setEntityResolver(_config.getCatalog());
+        }
+        return loader;
+    }
+
+
+    /**
+     * Drop the factories of this thread if the configuration changed since they were created.
+     */
+    private static void checkConfig() {
+        UxfXmlConfig config = _config;
+        if (CONFIGS.get() != config) {
+            INPUT_FACTORIES.remove();
+            LOADERS.remove();
+            CONFIGS.set(config);
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+/**
+ * UxfPanelTokenizer. Finds the boundaries of the raw text of a panel_attributes
+ * element in a single scan, without regular expressions or temporary arrays:
+ * the "--" separated sections (header, fields, methods, ...) and the comments
+ * following "Responsibilities".
+ * Section and segment counts follow String.split() (trailing empty parts are
+ * dropped), so the parser sees the same structure it did with split().
+ *
+ */
+public class UxfPanelTokenizer {
+
+    /**
+     * The section separator.
+     */
+    public static final String SECTION_SEPARATOR = "--";
+
+    /**
+     * The comments marker.
+     */
+    public static final String COMMENTS_MARKER = "Responsibilities";
+
+    /**
+     * Number of leading sections whose bounds are kept.
+     */
+    private static final int MAX_SECTIONS = 3;
+
+    /**
+     * The _text.
+     */
+    private final String _text;
+
+    /**
+     * The _section starts.
+     */
+    private final int[] _sectionStart = new int[MAX_SECTIONS];
+
+    /**
+     * The _section ends.
+     */
+    private final int[] _sectionEnd = new int[MAX_SECTIONS];
+
+    /**
+     * Number of sections, as split("--").length would give.
+     */
+    private int _sectionCount = 0;
+
+    /**
+     * The _comments start, -1 if there is no comments section.
+     */
+    private int _commentsStart = -1;
+
+    /**
+     * The _comments end.
+     */
+    private int _commentsEnd = -1;
+
+    /**
+     * UxfPanelTokenizer constructor, scans the text.
+     *
+     * @param text_
+     *            the raw panel text
+     */
+    public UxfPanelTokenizer(String text_) {
+        _text = text_;
+        scan();
+    }
+
+
+    /**
+     * Gets the text.
+     *
+     * @return the text
+     */
+    public String getText() {
+        return _text;
+    }
+
+
+    /**
+     * Checks if the text has more than index_ sections.
+     *
+     * @param index_
+     *            the section index
+     * @return true if split("--").length > index_
+     */
+    public boolean hasSection(int index_) {
+        return _sectionCount > index_;
+    }
+
+
+    /**
+     * Gets the start of a section.
+     *
+     * @param index_
+     *            the section index (0 = header, 1 = fields, 2 = methods)
+     * @return the start offset
+     */
+    public int sectionStart(int index_) {
+        return _sectionStart[index_];
+    }
+
+
+    /**
+     * Gets the end of a section.
+     *
+     * @param index_
+     *            the section index (0 = header, 1 = fields, 2 = methods)
+     * @return the end offset (exclusive)
+     */
+    public int sectionEnd(int index_) {
+        return _sectionEnd[index_];
+    }
+
+
+    /**
+     * Checks if the text has a comments section.
+     *
+     * @return true if split("Responsibilities").length > 1
+     */
+    public boolean hasComments() {
+        return _commentsStart >= 0;
+    }
+
+
+    /**
+     * Gets the start of the comments: just after the first "Responsibilities".
+     *
+     * @return the start offset
+     */
+    public int commentsStart() {
+        return _commentsStart;
+    }
+
+
+    /**
+     * Gets the end of the comments: the next "Responsibilities" or the end of the text.
+     *
+     * @return the end offset (exclusive)
+     */
+    public int commentsEnd() {
+        return _commentsEnd;
+    }
+
+
+    /**
+     * Gets the end of the line starting at from_.
+     *
+     * @param text_
+     *            the text
+     * @param from_
+     *            the line start
+     * @param end_
+     *            the end of the range
+     * @return offset of the next '\n', or end_
+     */
+    public static int lineEnd(String text_, int from_, int end_) {
+        int nl = text_.indexOf('\n', from_);
+        return (nl < 0 || nl > end_) ? end_ : nl;
+    }
+
+
+    /**
+     * Gets the line number of an offset.
+     *
+     * @param text_
+     *            the text
+     * @param offset_
+     *            the offset
+     * @return the line number, 1 based
+     */
+    public static int lineNumber(String text_, int offset_) {
+        int line = 1;
+        for (int x = text_.indexOf('\n'); x >= 0 && x < offset_; x = text_.indexOf('\n', x + 1)) {
+            line++;
+        }
+        return line;
+    }
+
+
+    /**
+     * Gets one part of a range split at a separator, as split(separator_)[index_]
+     * would give (trailing empty parts are dropped).
+     *
+     * @param text_
+     *            the text
+     * @param from_
+     *            the range start
+     * @param end_
+     *            the range end (exclusive)
+     * @param separator_
+     *            the literal separator
+     * @param index_
+     *            the part index
+     * @return the part, or null if split() would give index_ or fewer parts
+     */
+    public static String segment(String text_, int from_, int end_, String separator_, int index_) {
+        int partStart = from_;
+        int partIndex = 0;
+        int resultStart = -1;
+        int resultEnd = -1;
+        boolean nonEmptyFromIndex = false;
+        while (true) {
+            int sep = text_.indexOf(separator_, partStart);
+            int partEnd = (sep < 0 || sep + separator_.length() > end_) ? end_ : sep;
+            if (partIndex == index_) {
+                resultStart = partStart;
+                resultEnd = partEnd;
+            }
+            if (partIndex >= index_ && partEnd > partStart) {
+                nonEmptyFromIndex = true;
+            }
+            if (partEnd == end_ || (nonEmptyFromIndex && partIndex >= index_)) {
+                break;
+            }
+            partStart = partEnd + separator_.length();
+            partIndex++;
+        }
+        // split() of an empty range gives one empty part
+        if (resultStart < 0 || !(nonEmptyFromIndex || (from_ == end_ && index_ == 0))) {
+            return null;
+        }
+        return text_.substring(resultStart, resultEnd);
+    }
+
+
+    /**
+     * Checks if a range holds only whitespace.
+     *
+     * @param text_
+     *            the text
+     * @param from_
+     *            the range start
+     * @param end_
+     *            the range end (exclusive)
+     * @return true if trim() would give an empty string
+     */
+    public static boolean isBlank(String text_, int from_, int end_) {
+        for (int x = from_; x < end_; x++) {
+            if (text_.charAt(x) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Find section and comments boundaries in one pass over the text.
+     */
+    private void scan() {
+        String text = _text;
+        int length = text.length();
+        int markerLength = COMMENTS_MARKER.length();
+
+        int section = 0;
+        int sectionStart = 0;
+        int marker = 0;
+        int markerEnd = -1;
+        boolean commentsNonEmpty = false;
+
+        int x = 0;
+        while (x < length) {
+            char c = text.charAt(x);
+            if (c == '-' && x + 1 < length && text.charAt(x + 1) == '-') {
+                endSection(section++, sectionStart, x);
+                x += 2;
+                sectionStart = x;
+                continue;
+            }
+            if (c == 'R' && text.startsWith(COMMENTS_MARKER, x)) {
+                if (marker == 0) {
+                    _commentsStart = x + markerLength;
+                } else if (marker == 1) {
+                    _commentsEnd = x;
+                }
+                // A non-empty part after the first marker makes split() length > 1
+                if (marker > 0 && x > markerEnd) {
+                    commentsNonEmpty = true;
+                }
+                marker++;
+                x += markerLength;
+                markerEnd = x;
+                continue;
+            }
+            x++;
+        }
+        endSection(section, sectionStart, length);
+
+        if (marker > 0) {
+            if (_commentsEnd < 0) {
+                _commentsEnd = length;
+            }
+            if (!commentsNonEmpty && length <= markerEnd) {
+                _commentsStart = -1;
+                _commentsEnd = -1;
+            }
+        }
+    }
+
+
+    /**
+     * Record the bounds of a section and update the section count.
+     *
+     * @param index_
+     *            the section index
+     * @param start_
+     *            the section start
+     * @param end_
+     *            the section end
+     */
+    private void endSection(int index_, int start_, int end_) {
+        if (index_ < MAX_SECTIONS) {
+            _sectionStart[index_] = start_;
+            _sectionEnd[index_] = end_;
+        }
+        // Trailing empty sections do not count, as with split()
+        if (end_ > start_ || (index_ == 0 && _text.isEmpty())) {
+            _sectionCount = index_ + 1;
+        }
+    }
+}
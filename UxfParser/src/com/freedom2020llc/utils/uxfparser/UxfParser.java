@@ -4,26 +4,116 @@
 package com.freedom2020llc.utils.uxfparser;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.FactoryConfigurationError;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 /**
  * UxfParser. Quick and dirty UXF parser, that converts XML file to 
  * java source files in specified directory with specified imports.
  * See usage() method for how to run.
+ * Embedded use: an instance generates diagrams from files or streams and returns
+ * the class models and files in a UxfResult (use UxfOptions.setQuiet() to print
+ * nothing). Instances hold no per-run state, so one instance may be shared by
+ * many threads; XML factories are kept per thread (see UxfPanelReader).
  */
 public class UxfParser {
     
+    /**
+     * The _executor, shared by all generations of this instance, or null.
+     */
+    private final ExecutorService _executor;
+    
+    /**
+     * UxfParser constructor, generating serially.
+     */
+    public UxfParser() {
+        this(null);
+    }
+    
+    /**
+     * UxfParser constructor.
+     * 
+     * @param executor_
+     *            the worker pool for the panels of each diagram, or null to generate serially
+     */
+    public UxfParser(ExecutorService executor_) {
+        _executor = executor_;
+    }
+    
+    /**
+     * Generate the java classes of a diagram file.
+     * 
+     * @param uxfFile_
+     *            the UXF file
+     * @param options_
+     *            the run options
+     * @return the generated classes and files
+     * @throws IOException
+     *             if the diagram cannot be read or a class cannot be written
+     * @throws XMLStreamException
+     *             if the diagram is not well formed (streaming reader)
+     * @throws SAXException
+     *             if the diagram is not well formed (DOM reader)
+     * @throws ParserConfigurationException
+     *             if no document-loader can be created (DOM reader)
+     */
+    public UxfResult generate(Path uxfFile_, UxfOptions options_) 
+            throws IOException, XMLStreamException, SAXException, ParserConfigurationException {
+        UxfResult result = new UxfResult(UxfOutputWriter.create(options_));
+        try {
+            generate(uxfFile_.toString(), options_, _executor, result.getWriter(), null, result);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            result.getWriter().close();
+        }
+        return result;
+    }
+    
+    /**
+     * Generate the java classes of a diagram read from a stream. A stream is read
+     * once, so it is always generated in full, even if the options are incremental.
+     * 
+     * @param in_
+     *            the UXF document (not closed)
+     * @param systemId_
+     *            the system id used to resolve relative references, may be null
+     * @param options_
+     *            the run options
+     * @return the generated classes and files
+     * @throws IOException
+     *             if the diagram cannot be read or a class cannot be written
+     * @throws XMLStreamException
+     *             if the diagram is not well formed (streaming reader)
+     * @throws SAXException
+     *             if the diagram is not well formed (DOM reader)
+     * @throws ParserConfigurationException
+     *             if no document-loader can be created (DOM reader)
+     */
+    public UxfResult generate(InputStream in_, String systemId_, UxfOptions options_) 
+            throws IOException, XMLStreamException, SAXException, ParserConfigurationException {
+        UxfResult result = new UxfResult(UxfOutputWriter.create(options_));
+        try {
+            generateOnce(systemId_, in_, options_, _executor, result.getWriter(), null, null, result);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            result.getWriter().close();
+        }
+        return result;
+    }
+    
 	/**
 	 * Given a delimited single string list of package names, output a string list that can be used to print java package imports
 	 * Example input: parseImportsList("com.mycom.myapp", ".myutils;.mycode;java.text;java.util", ";", ".")
@@ -54,34 +144,383 @@ public class UxfParser {
 	 * Print usage
 	 */
 	protected static void usage() {
-        System.err.println("Usage:    UxfParser [uxfFilename] [outputJavaSrcDir] [outputJavaPackagePrefix] [importsList]");		
-        System.err.println("[uxfFilename]             input UXF filename");		
+        System.err.println("Usage:    UxfParser [options] [uxfFilename] [outputJavaSrcDir] [outputJavaPackagePrefix] [importsList]");		
+        System.err.println("[uxfFilename]             input UXF filename, a gzipped one (.uxf.gz) or a zip entry (\"diagrams.zip!collar.uxf\")");		
         System.err.println("[outputJavaSrcDir]        target output src directory. Check here for java src files after execution is complete.");		
         System.err.println("[outputJavaPackagePrefix] prefix package for output java packages e.g. \"com.mycom.myapp\" ");		
         System.err.println("[importsList]             delimited (;) list of required java imports in output src files Example: \".myutils;.mycode;java.text;java.util\". ");
         System.err.println("                          A list entry with \".\" prefix means use [outputJavaPackagePrefix] as output package name prefix.");		
+        System.err.println("Options:");
+        System.err.println("  --dom                   load the whole file as a DOM tree instead of streaming it (slower, uses more memory).");
+        System.err.println("  --parallel [workers]    parse and write classes on [workers] threads (0 = one per processor).");
+        System.err.println("  --incremental           only regenerate panels changed since the last run, remove files of deleted panels.");
+        System.err.println("  --write-threads [n]     write files on [n] background threads through a bounded queue.");
+        System.err.println("  --sync                  force all written files to disk in one batch at the end.");
+        System.err.println("  --snapshot              keep the parsed classes in a binary snapshot next to the diagram and, while the diagram");
+        System.err.println("                          is unchanged, emit from the snapshot instead of reading XML (e.g. for another package prefix).");
+        System.err.println("  --precise-imports       import the diagram classes a class references one by one, and [importsList] packages");
+        System.err.println("                          only for names not found in the diagrams (the index is not updated by --watch).");
+        System.err.println("  --template [file]       lay out the java files with a template (UTF-8) instead of the default layout:");
+        System.err.println("                          text with ${package}, ${className}, ${classDefinition}, ${comments}, ${for imports}");
+        System.err.println("                          ${import} ${end}, ${for fields} ${field} ${end}, ${for methods} ${method} ${end}, ${if ...}.");
+        System.err.println("  --shard [i/N]           only generate the panels of shard i of N (by a stable hash of package and class name)");
+        System.err.println("                          and write a partial manifest; run every shard, e.g. in parallel processes, then merge.");
+        System.err.println("  --include [glob]        only generate the panels matching [glob], may be repeated: package.ClassName with the");
+        System.err.println("                          package as in the diagram, or the class name for a glob without \".\"; * within a");
+        System.err.println("                          name, ** across dots. Panels are picked by their header, the others are never parsed.");
+        System.err.println("  --exclude [glob]        do not generate the panels matching [glob] (as --include), may be repeated.");
+        System.err.println("  --merge-shards [N]      check the partial manifests of N shards: all present, same diagram, no two panels");
+        System.err.println("                          writing one file; exits with status 1 on problems.");
+        System.err.println("  --xml-catalog [file]    resolve DTDs and external entities from local files listed in [file] (lines of");
+        System.err.println("                          public id, system id or file name = local path); any other external reference fails.");
+        System.err.println("  --xml-limit [name=n]    set an XML processing limit, e.g. maxElementDepth=64 (0 = none), may be repeated:");
+        System.err.println("                          entityExpansionLimit, entityReplacementLimit, totalEntitySizeLimit, maxGeneralEntitySizeLimit,");
+        System.err.println("                          maxParameterEntitySizeLimit, maxElementDepth, elementAttributeLimit, maxXMLNameLimit.");
+        System.err.println("  --log-level [level]     debug (parse trace and every generated source), info (default: files written,");
+        System.err.println("                          summaries), warn, error or off.");
+        System.err.println("  --log-async             print log messages on a background thread instead of the generating threads.");
+        System.err.println("  --stats                 print a JSON report of phase times, class time percentiles and slowest classes.");
+        System.err.println("  --stats-file [file]     write the JSON stats report to [file].");
+        System.err.println("  --batch                 [uxfFilename] is a directory, glob or manifest file of diagrams, all run in this JVM.");
+        System.err.println("  --config [file]         batch config (properties): <diagram>.packagePrefix, <diagram>.imports, <diagram>.outputDir.");
+        System.err.println("  --verify                compile the generated classes in memory instead of writing them, report errors by diagram line;");
+        System.err.println("                          exits with status 1 if there are errors.");
+        System.err.println("  --classpath [path]      class path --verify compiles against (e.g. where imported packages are).");
+        System.err.println("  --allow-missing-packages");
+        System.err.println("                          with --verify, report imports of packages not on the class path as warnings, not");
+        System.err.println("                          errors (e.g. [importsList] packages of code not built yet). Only import lines:");
+        System.err.println("                          a missing package in a field or method (e.g. com.typo.Foo) is still an error.");
+        System.err.println("  --watch                 after generating, keep running and regenerate each diagram when it is saved (implies --incremental).");
         System.err.println("Example:  UxfParser \"C:\\uxf\\collar.uxf\" \"C:\\users\\me\\workspace\\myapp\\src\\\" \"com.mycom.myapp\" \".myutils;.mycode;java.text;java.util\"");		
 	}
 	
     /**
-     * Main entry point - requires uxf filename.
+     * Generate the java classes of one diagram.
+     * 
+     * @param uxfFilename_
+     *            the UXF filename
+     * @param options_
+     *            the run options
+     * @param executor_
+     *            the worker pool, or null to generate serially
+     * @param writer_
+     *            the output writer, counts written, unchanged and deleted files
+     * @param stats_
+     *            the stats collector, or null
+     * @return number of classes generated
+     * @throws IOException
+     *             if the diagram cannot be read
+     * @throws XMLStreamException
+     *             if the diagram is not well formed (streaming reader)
+     * @throws SAXException
+     *             if the diagram is not well formed (DOM reader)
+     * @throws ParserConfigurationException
+     *             if no document-loader can be created (DOM reader)
+     */
+    public static int generate(String uxfFilename_, UxfOptions options_, ExecutorService executor_, UxfOutputWriter writer_, UxfStats stats_) 
+            throws IOException, XMLStreamException, SAXException, ParserConfigurationException {
+        return generate(uxfFilename_, options_, executor_, writer_, stats_, null);
+    }
+    
+    /**
+     * Generate the java classes of one diagram, collecting them in a result.
+     * 
+     * @param uxfFilename_
+     *            the UXF filename
+     * @param options_
+     *            the run options
+     * @param executor_
+     *            the worker pool, or null to generate serially
+     * @param writer_
+     *            the output writer, counts written, unchanged and deleted files
+     * @param stats_
+     *            the stats collector, or null
+     * @param result_
+     *            the result collecting generated classes, or null
+     * @return number of classes generated
+     * @throws IOException
+     *             if the diagram cannot be read
+     * @throws XMLStreamException
+     *             if the diagram is not well formed (streaming reader)
+     * @throws SAXException
+     *             if the diagram is not well formed (DOM reader)
+     * @throws ParserConfigurationException
+     *             if no document-loader can be created (DOM reader)
+     */
+    public static int generate(String uxfFilename_, UxfOptions options_, ExecutorService executor_, UxfOutputWriter writer_, UxfStats stats_, UxfResult result_) 
+            throws IOException, XMLStreamException, SAXException, ParserConfigurationException {
+        // Each shard and filter keeps its own manifest, the files of panels left out are not deleted
+        String variant = (options_.getShard() == null) ? "" : "." + options_.getShard().getName();
+        if (options_.getFilter() != null) {
+            variant += "." + options_.getFilter().getName();
+        }
+        UxfManifest manifest = options_.isIncremental() ? UxfManifest.load(options_.getOutputJavaSrcDir(), uxfFilename_, variant) : null;
+        UxfGenerator generator = generateOnce(uxfFilename_, null, options_, executor_, writer_, stats_, manifest, result_);
+        // Files queued by an asynchronous writer are on disk before the manifest says so
+        writer_.flush();
+        if (manifest != null) {
+            if (manifest.hasConflict()) {
+                // A skipped panel should overwrite a file written in this run: run in full
+                if (!options_.isQuiet()) {
+                    UxfLog.info("Incremental: several panels write the same file, regenerating all of ", uxfFilename_);
+                }
+                manifest.forceAll();
+                generator = generateOnce(uxfFilename_, null, options_, executor_, writer_, stats_, manifest, result_);
+                writer_.flush();
+            }
+            manifest.removeDeleted(writer_);
+            manifest.save();
+            if (result_ != null) {
+                result_.setSkippedCount(manifest.getSkippedCount());
+            }
+            if (!options_.isQuiet()) {
+                UxfLog.info("Incremental: " + generator.getClassCount() + " regenerated, " 
+                        + manifest.getSkippedCount() + " skipped");
+            }
+        }
+        if (options_.getFilter() != null && !options_.isQuiet()) {
+            UxfLog.info("Filter: " + generator.getFilteredCount() + " panels left out by " + options_.getFilter());
+        }
+        return generator.getClassCount();
+    }
+    
+    /**
+     * Read a diagram once through a new generator.
+     * 
+     * @param uxfFilename_
+     *            the UXF filename, or the system id of in_
+     * @param in_
+     *            the UXF document, or null to read uxfFilename_
+     * @param options_
+     *            the run options
+     * @param executor_
+     *            the worker pool, or null
+     * @param writer_
+     *            the output writer
+     * @param stats_
+     *            the stats collector, or null
+     * @param manifest_
+     *            the incremental manifest, or null
+     * @param result_
+     *            the result collecting generated classes, or null
+     * @return the finished generator
+     * @throws IOException
+     *             if the diagram cannot be read
+     * @throws XMLStreamException
+     *             if the diagram is not well formed (streaming reader)
+     * @throws SAXException
+     *             if the diagram is not well formed (DOM reader)
+     * @throws ParserConfigurationException
+     *             if no document-loader can be created (DOM reader)
+     */
+    private static UxfGenerator generateOnce(String uxfFilename_, InputStream in_, UxfOptions options_, ExecutorService executor_, UxfOutputWriter writer_, UxfStats stats_, UxfManifest manifest_, UxfResult result_) 
+            throws IOException, XMLStreamException, SAXException, ParserConfigurationException {
+        UxfGenerator generator = new UxfGenerator(options_, executor_, writer_);
+        generator.setManifest(manifest_);
+        generator.setStats(stats_, uxfFilename_);
+        generator.setResult(result_);
+        UxfShardManifest shardManifest = (options_.getShard() != null && in_ == null) ? new UxfShardManifest(uxfFilename_, options_) : null;
+        generator.setShardManifest(shardManifest);
+        UxfPhaseEvent readEvent = new UxfPhaseEvent(UxfPhaseEvent.READ, uxfFilename_);
+        readEvent.begin();
+        long start = System.nanoTime();
+        UxfSnapshot snapshot = (options_.isSnapshot() && in_ == null) ? UxfSnapshot.open(uxfFilename_) : null;
+        if (snapshot != null && snapshot.isLoaded()) {
+            // The diagram is unchanged since the snapshot: no XML, no panel parsing
+            snapshot.replay(options_, generator);
+        } else if (in_ != null) {
+            if (options_.isUseDom()) {
+                UxfPanelReader.readDocument(in_, uxfFilename_, generator);
+            } else {
+                UxfPanelReader.read(in_, uxfFilename_, generator);
+            }
+        } else {
+            // A snapshot needs every panel parsed, a sharded or filtered run does not record one
+            if (options_.getShard() != null || options_.getFilter() != null) {
+                snapshot = null;
+            }
+            generator.setSnapshot(snapshot);
+            if (options_.isUseDom()) {
+                UxfPanelReader.readDocument(uxfFilename_, generator);
+            } else {
+                UxfPanelReader.read(uxfFilename_, generator);
+            }
+        }
+        generator.finish();
+        if (shardManifest != null) {
+            shardManifest.save(uxfFilename_);
+        }
+        if (snapshot != null && !snapshot.isLoaded()) {
+            snapshot.save();
+        }
+        readEvent.commit();
+        if (stats_ != null) {
+            stats_.recordDiagram(uxfFilename_, System.nanoTime() - start - generator.getHandlerNanos());
+        }
+        return generator;
+    }
+    
+    /**
+     * Main entry point - requires uxf filename. Exits with status 1 if a
+     * diagram cannot be read or a batch diagram fails, so build tools notice.
      * 
      * @param args_
      *            the arguments
      */
     public static void main(String[] args_) {
         
+        boolean ok = true;
         try {
           
+          // Read options
+          boolean useDom = false;
+          boolean batch = false;
+          boolean incremental = false;
+          boolean snapshot = false;
+          boolean sync = false;
+          boolean preciseImports = false;
+          UxfShard shard = null;
+          UxfPanelFilter filter = new UxfPanelFilter();
+          UxfTemplate template = null;
+          UxfXmlConfig xmlConfig = new UxfXmlConfig();
+          int mergeShards = 0;
+          int writeThreads = 0;
+          boolean watch = false;
+          boolean verify = false;
+          boolean allowMissingPackages = false;
+          String classpath = null;
+          boolean stats = false;
+          String statsFilename = null;
+          String configFilename = null;
+          int workers = 1;
+          int argIndex = 0;
+          while (argIndex < args_.length && args_[argIndex].startsWith("--")) {
+              String option = args_[argIndex++];
+              if ("--dom".equals(option)) {
+                  useDom = true;
+              } else if ("--incremental".equals(option)) {
+                  incremental = true;
+              } else if ("--snapshot".equals(option)) {
+                  snapshot = true;
+              } else if ("--shard".equals(option) && argIndex < args_.length) {
+                  try {
+                      shard = UxfShard.parse(args_[argIndex++]);
+                  } catch (IllegalArgumentException ex) {
+                      usage();
+                      System.err.println("[--shard] could not be parsed - " + args_[argIndex - 1]);
+                      return;
+                  }
+              } else if (("--include".equals(option) || "--exclude".equals(option)) && argIndex < args_.length) {
+                  try {
+                      if ("--include".equals(option)) {
+                          filter.include(args_[argIndex++]);
+                      } else {
+                          filter.exclude(args_[argIndex++]);
+                      }
+                  } catch (IllegalArgumentException ex) {
+                      usage();
+                      System.err.println("[" + option + "] could not be parsed - " + ex.getMessage());
+                      return;
+                  }
+              } else if ("--merge-shards".equals(option) && argIndex < args_.length) {
+                  try {
+                      mergeShards = Integer.parseInt(args_[argIndex++]);
+                  } catch (NumberFormatException ex) {
+                      usage();
+                      System.err.println("[--merge-shards] could not be parsed - " + args_[argIndex - 1]);
+                      return;
+                  }
+              } else if ("--template".equals(option) && argIndex < args_.length) {
+                  try {
+                      template = UxfTemplate.load(args_[argIndex++]);
+                  } catch (IOException ex) {
+                      usage();
+                      System.err.println("[--template] could not be read - " + ex);
+                      return;
+                  } catch (IllegalArgumentException ex) {
+                      usage();
+                      System.err.println("[--template] could not be parsed - " + ex.getMessage());
+                      return;
+                  }
+              } else if ("--xml-catalog".equals(option) && argIndex < args_.length) {
+                  try {
+                      xmlConfig.setCatalog(args_[argIndex++]);
+                  } catch (IOException ex) {
+                      usage();
+                      System.err.println("[--xml-catalog] could not be read - " + ex.getMessage());
+                      return;
+                  }
+              } else if ("--xml-limit".equals(option) && argIndex < args_.length) {
+                  try {
+                      xmlConfig.setLimit(args_[argIndex++]);
+                  } catch (IllegalArgumentException ex) {
+                      usage();
+                      System.err.println("[--xml-limit] could not be parsed - " + ex.getMessage());
+                      return;
+                  }
+              } else if ("--log-level".equals(option) && argIndex < args_.length) {
+                  try {
+                      UxfLog.setLevel(args_[argIndex++]);
+                  } catch (IllegalArgumentException ex) {
+                      usage();
+                      System.err.println("[--log-level] could not be parsed - " + args_[argIndex - 1]);
+                      return;
+                  }
+              } else if ("--log-async".equals(option)) {
+                  UxfLog.setAsync(true);
+              } else if ("--precise-imports".equals(option)) {
+                  preciseImports = true;
+              } else if ("--sync".equals(option)) {
+                  sync = true;
+              } else if ("--write-threads".equals(option) && argIndex < args_.length) {
+                  try {
+                      writeThreads = Integer.parseInt(args_[argIndex++]);
+                  } catch (NumberFormatException ex) {
+                      usage();
+                      System.err.println("[--write-threads] could not be parsed - " + args_[argIndex - 1]);
+                      return;
+                  }
+              } else if ("--verify".equals(option)) {
+                  verify = true;
+              } else if ("--allow-missing-packages".equals(option)) {
+                  allowMissingPackages = true;
+              } else if ("--classpath".equals(option) && argIndex < args_.length) {
+                  classpath = args_[argIndex++];
+              } else if ("--watch".equals(option)) {
+                  watch = true;
+              } else if ("--stats".equals(option)) {
+                  stats = true;
+              } else if ("--stats-file".equals(option) && argIndex < args_.length) {
+                  stats = true;
+                  statsFilename = args_[argIndex++];
+              } else if ("--batch".equals(option)) {
+                  batch = true;
+              } else if ("--config".equals(option) && argIndex < args_.length) {
+                  configFilename = args_[argIndex++];
+              } else if ("--parallel".equals(option) && argIndex < args_.length) {
+                  try {
+                      workers = Integer.parseInt(args_[argIndex++]);
+                  } catch (NumberFormatException ex) {
+                      usage();
+                      System.err.println("[--parallel] could not be parsed - " + args_[argIndex - 1]);
+                      return;
+                  }
+              } else {
+                  usage();
+                  System.err.println("Unknown option - " + option);
+                  return;
+              }
+          }
+          
           // Check args
-          if (args_.length != 4) {
+          if (args_.length - argIndex != 4) {
         	  usage();
               return;
           }
-          String uxfFilename = args_[0];
-          String outputJavaSrcDir = args_[1];
-          String outputJavaPackagePrefix = args_[2];
-          String importsList = args_[3];
+          String uxfFilename = args_[argIndex];
+          String outputJavaSrcDir = args_[argIndex + 1];
+          String outputJavaPackagePrefix = args_[argIndex + 2];
+          String importsList = args_[argIndex + 3];
           
           // Verify imports list
           ArrayList<String> outputImportsList = parseImportsList(
@@ -96,61 +535,142 @@ public class UxfParser {
               return;        	  
           }
           
-          // first of all we request out 
-          // DOM-implementation:
-          DocumentBuilderFactory factory = 
-            DocumentBuilderFactory.newInstance();
-          // then we have to create document-loader:
-          DocumentBuilder loader = factory.newDocumentBuilder();
-
-          // loading a DOM-tree...
-          Document document = loader.parse(uxfFilename);
-          // at last, we get a root element:
-          Element tree = document.getDocumentElement();
-
-          // ... do something with document element ...
-          NodeList classList = tree.getElementsByTagName("panel_attributes");
-          for (int s = 0; s < classList.getLength(); s++) {
-
-              Node fstNode = classList.item(s);
+          UxfOptions options = new UxfOptions(outputJavaSrcDir, outputJavaPackagePrefix, outputImportsList);
+          options.setUseDom(useDom);
+          options.setWorkers(workers);
+          options.setIncremental(incremental || watch);
+          // Mapped files stay open until collected: fine for one run, not while watching
+          UxfInput.setMapping(!watch);
+          options.setSnapshot(snapshot);
+          options.setWriteThreads(writeThreads);
+          options.setSync(sync);
+          options.setShard(shard);
+          options.setFilter(filter.isEmpty() ? null : filter);
+          options.setTemplate(template);
+          UxfPanelReader.configure(xmlConfig);
+          
+          // Check the shards of a sharded run fit together
+          if (mergeShards > 0) {
+              int problems = 0;
+              if (batch) {
+                  UxfBatch uxfBatch = new UxfBatch(options, importsList, UxfBatch.loadConfig(configFilename));
+                  for (String diagram : UxfBatch.findDiagrams(uxfFilename)) {
+                      problems += UxfShardManifest.merge(diagram, uxfBatch.optionsFor(diagram), mergeShards);
+                  }
+              } else {
+                  problems += UxfShardManifest.merge(uxfFilename, options, mergeShards);
+              }
+              if (problems > 0) {
+                  System.exit(1);
+              }
+              return;
+          }
+          
+          // Index the classes of every diagram, so classes import exactly what they reference
+          if (preciseImports) {
+              UxfTypeIndex typeIndex = new UxfTypeIndex();
+              options.setTypeIndex(typeIndex);
+              if (batch) {
+                  UxfBatch uxfBatch = new UxfBatch(options, importsList, UxfBatch.loadConfig(configFilename));
+                  for (String diagram : UxfBatch.findDiagrams(uxfFilename)) {
+                      typeIndex.read(diagram, uxfBatch.optionsFor(diagram));
+                  }
+              } else {
+                  typeIndex.read(uxfFilename, options);
+              }
+              UxfLog.info("Type index: " + typeIndex.size() + " classes");
+          }
+          
+          // Compile the classes in memory only
+          if (verify) {
+              long start = System.currentTimeMillis();
+              UxfVerifier verifier = new UxfVerifier();
+              verifier.setAllowMissingPackages(allowMissingPackages);
+              if (batch) {
+                  UxfBatch uxfBatch = new UxfBatch(options, importsList, UxfBatch.loadConfig(configFilename));
+                  for (String diagram : UxfBatch.findDiagrams(uxfFilename)) {
+                      verifier.read(diagram, uxfBatch.optionsFor(diagram));
+                  }
+              } else {
+                  verifier.read(uxfFilename, options);
+              }
+              int errors = verifier.verify(classpath);
+              System.out.println("Verify: " + verifier.getClassCount() + " classes, " + errors + " errors, " 
+                      + (System.currentTimeMillis() - start) + " ms");
+              if (errors > 0) {
+                  System.exit(1);
+              }
+              return;
+          }
+          
+          // Read panels and write one java class per panel
+          UxfStats uxfStats = stats ? new UxfStats() : null;
+          ExecutorService executor = (options.getWorkers() > 1) ? new ForkJoinPool(options.getWorkers()) : null;
+          UxfWatcher watcher = watch ? new UxfWatcher(executor) : null;
+          try {
+              if (batch) {
+                  UxfBatch uxfBatch = new UxfBatch(options, importsList, UxfBatch.loadConfig(configFilename));
+                  List<String> diagrams = UxfBatch.findDiagrams(uxfFilename);
+                  ok = uxfBatch.run(diagrams, executor, uxfStats);
+                  if (watcher != null) {
+                      for (String diagram : diagrams) {
+                          watcher.add(diagram, uxfBatch.optionsFor(diagram));
+                      }
+                  }
+              } else {
+                  UxfOutputWriter writer = UxfOutputWriter.create(options);
+                  try {
+                      generate(uxfFilename, options, executor, writer, uxfStats);
+                  } finally {
+                      writer.close();
+                  }
+                  UxfLog.info("Output: ", writer);
+                  if (watcher != null) {
+                      watcher.add(uxfFilename, options);
+                  }
+              }
+              if (uxfStats != null) {
+                  UxfLog.flush();
+                  uxfStats.report(statsFilename);
+              }
               
-              if (fstNode.getNodeType() == Node.ELEMENT_NODE) {
-
-                // Read text node
-                Element fstElmnt = (Element) fstNode;
-                NodeList fstNm = fstElmnt.getChildNodes();
-                String rawtext = ((Node) fstNm.item(0)).getNodeValue();
-                
-                // Pr
-                UxfJavaClass uxf = UxfJavaClass.parse(
-                        outputJavaPackagePrefix, 
-                        rawtext,
-                        outputJavaSrcDir,
-                        outputImportsList
-                );                
-                System.out.println(uxf);
-                System.out.println("-----------------------");
-                uxf.writeclassfile();
+              // Keep the JVM, factories and pool warm and regenerate on save
+              if (watcher != null) {
+                  watcher.run();
               }
-
-         }          
+          } finally {
+              if (executor != null) {
+                  executor.shutdown();
+              }
+              UxfLog.flush();
+          }
           
         } catch (IOException ex) {
           // any IO errors occur:
           System.err.println(ex);
+          ok = false;
+        } catch (XMLStreamException ex) {
+          // streaming parse errors occur:
+          System.err.println(ex);
+          ok = false;
         } catch (SAXException ex) {
           // parse errors occur:
           System.err.println(ex);
+          ok = false;
         } catch (ParserConfigurationException ex) {
           // document-loader cannot be created which,
           // satisfies the configuration requested
           System.err.println(ex);
+          ok = false;
         } catch (FactoryConfigurationError ex) {
           // DOM-implementation is not available 
           // or cannot be instantiated:
           System.err.println(ex);
+          ok = false;
         }
        
-        return;
+        if (!ok) {
+            System.exit(1);
+        }
     }
 }
@@ -0,0 +1,76 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * UxfPhaseEvent. JFR event for one phase of generation: reading a diagram, or
+ * parsing, emitting or writing one class. Costs next to nothing unless a flight
+ * recording with this event enabled is running.
+ *
+ */
+@Name("com.freedom2020llc.uxfparser.Phase")
+@Label("UXF Phase")
+@Category("UXF Parser")
+@Description("One phase of UXF to java generation")
+@StackTrace(false)
+public class UxfPhaseEvent extends Event {
+
+    /**
+     * Phase name for reading a diagram.
+     */
+    public static final String READ = "read";
+
+    /**
+     * Phase name for parsing a panel.
+     */
+    public static final String PARSE = "parse";
+
+    /**
+     * Phase name for emitting a java source.
+     */
+    public static final String EMIT = "emit";
+
+    /**
+     * Phase name for writing a java file.
+     */
+    public static final String WRITE = "write";
+
+    /**
+     * The phase.
+     */
+    @Label("Phase")
+    public String phase;
+
+    /**
+     * The diagram.
+     */
+    @Label("Diagram")
+    public String diagram;
+
+    /**
+     * The class name, empty for diagram phases.
+     */
+    @Label("Class")
+    public String className;
+
+    /**
+     * UxfPhaseEvent constructor.
+     *
+     * @param phase_
+     *            the phase
+     * @param diagram_
+     *            the diagram
+     */
+    public UxfPhaseEvent(String phase_, String diagram_) {
+        phase = phase_;
+        diagram = diagram_;
+    }
+}
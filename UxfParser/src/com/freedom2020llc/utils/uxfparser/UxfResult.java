@@ -0,0 +1,184 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * UxfResult. What one generation of a diagram produced: the class models in
+ * diagram order, the files they were written to and whether each file changed.
+ * Filled in by a UxfGenerator, possibly from several worker threads.
+ *
+ */
+public class UxfResult {
+
+    /**
+     * One generated class.
+     */
+    public static class Entry {
+
+        /** The class model. */
+        private final UxfJavaClass _javaClass;
+
+        /** The file the class was written to. */
+        private final File _file;
+
+        /** The write result, null if a later panel wrote the same file. */
+        private final UxfOutputWriter.Result _writeResult;
+
+        Entry(UxfJavaClass javaClass_, File file_, UxfOutputWriter.Result writeResult_) {
+            _javaClass = javaClass_;
+            _file = file_;
+            _writeResult = writeResult_;
+        }
+
+        /**
+         * Gets the class model.
+         *
+         * @return the class
+         */
+        public UxfJavaClass getJavaClass() {
+            return _javaClass;
+        }
+
+        /**
+         * Gets the file the class is written to.
+         *
+         * @return the class file
+         */
+        public File getFile() {
+            return _file;
+        }
+
+        /**
+         * Gets the write result.
+         *
+         * @return WRITTEN, UNCHANGED, QUEUED (asynchronous writer), or null if a later panel wrote the same file
+         */
+        public UxfOutputWriter.Result getWriteResult() {
+            return _writeResult;
+        }
+    }
+
+    /**
+     * The _entries, by panel sequence.
+     */
+    private final Map<Integer, Entry> _entries = new ConcurrentSkipListMap<Integer, Entry>();
+
+    /**
+     * The _writer of the generation.
+     */
+    private final UxfOutputWriter _writer;
+
+    /**
+     * The _skipped count, panels unchanged since the last incremental run.
+     */
+    private int _skipped = 0;
+
+    /**
+     * UxfResult constructor.
+     *
+     * @param writer_
+     *            the output writer of the generation
+     */
+    public UxfResult(UxfOutputWriter writer_) {
+        _writer = writer_;
+    }
+
+
+    /**
+     * Record a generated class.
+     *
+     * @param sequence_
+     *            the position of the panel in the diagram
+     * @param javaClass_
+     *            the class model
+     * @param writeResult_
+     *            the write result, or null if the file was left to a later panel
+     */
+    public void add(int sequence_, UxfJavaClass javaClass_, UxfOutputWriter.Result writeResult_) {
+        _entries.put(Integer.valueOf(sequence_), new Entry(javaClass_, javaClass_.getClassFile(), writeResult_));
+    }
+
+
+    /**
+     * Gets the generated classes, in diagram order.
+     *
+     * @return the entries
+     */
+    public List<Entry> getEntries() {
+        return new ArrayList<Entry>(_entries.values());
+    }
+
+
+    /**
+     * Gets the generated class models, in diagram order.
+     *
+     * @return the classes
+     */
+    public List<UxfJavaClass> getClasses() {
+        List<UxfJavaClass> classes = new ArrayList<UxfJavaClass>(_entries.size());
+        for (Entry entry : _entries.values()) {
+            classes.add(entry.getJavaClass());
+        }
+        return classes;
+    }
+
+
+    /**
+     * Gets the files written, in diagram order.
+     *
+     * @return the class files
+     */
+    public List<File> getFiles() {
+        List<File> files = new ArrayList<File>(_entries.size());
+        for (Entry entry : _entries.values()) {
+            files.add(entry.getFile());
+        }
+        return files;
+    }
+
+
+    /**
+     * Gets the output writer, which counts written, unchanged and deleted files.
+     *
+     * @return the writer
+     */
+    public UxfOutputWriter getWriter() {
+        return _writer;
+    }
+
+
+    /**
+     * Gets the number of panels skipped as unchanged (incremental runs).
+     *
+     * @return the skipped count
+     */
+    public int getSkippedCount() {
+        return _skipped;
+    }
+
+
+    /**
+     * Sets the number of panels skipped as unchanged.
+     *
+     * @param skipped_
+     *            the skipped count
+     */
+    void setSkippedCount(int skipped_) {
+        _skipped = skipped_;
+    }
+
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return _entries.size() + " classes, " + _writer + " files";
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+/**
+ * UxfShard. One slice of a diagram generated by several processes (see --shard).
+ * Each panel belongs to exactly one shard, chosen by a stable hash of its package
+ * and class name (see UxfPanelHeader), so every process picks the same panels
+ * whatever the JVM, and all panels writing one file land in the same shard.
+ * Shards are numbered 1 to N.
+ *
+ */
+public class UxfShard {
+
+    /**
+     * The _index, 1 based.
+     */
+    private final int _index;
+
+    /**
+     * The _count of shards.
+     */
+    private final int _count;
+
+    /**
+     * UxfShard constructor.
+     *
+     * @param index_
+     *            the shard, 1 to count_
+     * @param count_
+     *            the number of shards
+     */
+    public UxfShard(int index_, int count_) {
+        if (count_ < 1 || index_ < 1 || index_ > count_) {
+            throw new IllegalArgumentException("Shard must be i/N with 1 <= i <= N - " + index_ + "/" + count_);
+        }
+        _index = index_;
+        _count = count_;
+    }
+
+
+    /**
+     * Parse a shard given as "i/N".
+     *
+     * @param spec_
+     *            the shard, e.g. "2/4"
+     * @return the shard
+     * @throws IllegalArgumentException
+     *             if the shard cannot be parsed
+     */
+    public static UxfShard parse(String spec_) {
+        int slash = spec_.indexOf('/');
+        if (slash < 0) {
+            throw new IllegalArgumentException("Shard must be i/N - " + spec_);
+        }
+        try {
+            return new UxfShard(Integer.parseInt(spec_.substring(0, slash).trim()), Integer.parseInt(spec_.substring(slash + 1).trim()));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Shard must be i/N - " + spec_);
+        }
+    }
+
+
+    /**
+     * Gets the shard of a class. Uses String.hashCode(), which is the same on
+     * every JVM, spread so that similar names do not cluster.
+     *
+     * @param className_
+     *            the class name
+     * @param packageName_
+     *            the package name as given in the diagram
+     * @param count_
+     *            the number of shards
+     * @return the shard, 1 to count_
+     */
+    public static int of(String className_, String packageName_, int count_) {
+        int hash = (packageName_ + "." + className_).hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x45d9f3b;
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, count_) + 1;
+    }
+
+
+    /**
+     * Checks if a panel belongs to this shard. Panels without a class header
+     * belong to the first shard.
+     *
+     * @param header_
+     *            the panel header, or null
+     * @return true if this shard generates the panel
+     */
+    public boolean accepts(UxfPanelHeader header_) {
+        if (header_ == null) {
+            return _index == 1;
+        }
+        return of(header_.getClassName(), header_.getPackageName(), _count) == _index;
+    }
+
+
+    /**
+     * Gets the shard number.
+     *
+     * @return the index, 1 based
+     */
+    public int getIndex() {
+        return _index;
+    }
+
+
+    /**
+     * Gets the number of shards.
+     *
+     * @return the count
+     */
+    public int getCount() {
+        return _count;
+    }
+
+
+    /**
+     * Gets the name used in file names, e.g. "shard-2-of-4".
+     *
+     * @return the name
+     */
+    public String getName() {
+        return "shard-" + _index + "-of-" + _count;
+    }
+
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return _index + "/" + _count;
+    }
+}
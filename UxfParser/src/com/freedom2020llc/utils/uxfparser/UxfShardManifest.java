@@ -0,0 +1,259 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * UxfShardManifest. The partial manifest of one shard of a diagram (see UxfShard):
+ * the panels the shard generated and the file each one writes, stored in
+ * [outputJavaSrcDir]/.uxfparser/[diagram key].shard-i-of-N (see UxfManifest.key()),
+ * one "panel path class" line per panel. Once every shard is done, merge()
+ * checks the partial manifests belong together and that no two panels write
+ * the same file, and writes the merged list to [diagram key].shards.
+ *
+ */
+public class UxfShardManifest {
+
+    /**
+     * The first line of every partial manifest, followed by " i/N diagramhash".
+     */
+    private static final String HEADER = "# uxfparser shard 1";
+
+    /**
+     * The merged manifest file extension.
+     */
+    public static final String MERGED_EXTENSION = ".shards";
+
+    /**
+     * The _shard.
+     */
+    private final UxfShard _shard;
+
+    /**
+     * The _file.
+     */
+    private final File _file;
+
+    /**
+     * The _package prefix.
+     */
+    private final String _packagePrefix;
+
+    /**
+     * Panels of the shard by sequence: relative path and qualified class name.
+     */
+    private final Map<Integer, String[]> _panels = new ConcurrentSkipListMap<Integer, String[]>();
+
+    /**
+     * UxfShardManifest constructor.
+     *
+     * @param uxfFilename_
+     *            the diagram filename
+     * @param options_
+     *            the run options (output dir, package prefix and shard)
+     */
+    public UxfShardManifest(String uxfFilename_, UxfOptions options_) {
+        _shard = options_.getShard();
+        _file = file(uxfFilename_, options_, "." + _shard.getName());
+        _packagePrefix = options_.getOutputJavaPackagePrefix();
+    }
+
+
+    /**
+     * Record a panel of the shard. May be called from several threads.
+     *
+     * @param sequence_
+     *            the position of the panel in the diagram
+     * @param header_
+     *            the panel header
+     */
+    public void record(int sequence_, UxfPanelHeader header_) {
+        String packageName = header_.getPackageName(_packagePrefix);
+        String path = packageName.replace('.', '/') + "/" + header_.getClassName() + ".java";
+        _panels.put(sequence_, new String[] { path, packageName + "." + header_.getClassName() });
+    }
+
+
+    /**
+     * Save the partial manifest.
+     *
+     * @param uxfFilename_
+     *            the diagram filename, hashed so merge() can tell shards of another version apart
+     * @throws IOException
+     *             if the diagram cannot be read or the manifest cannot be written
+     */
+    public void save(String uxfFilename_) throws IOException {
+        List<String> lines = new ArrayList<String>(_panels.size() + 1);
+        lines.add(HEADER + " " + _shard + " " + toHex(UxfSnapshot.hash(UxfInput.file(uxfFilename_))));
+        for (Map.Entry<Integer, String[]> panel : _panels.entrySet()) {
+            lines.add(panel.getKey() + " " + panel.getValue()[0] + " " + panel.getValue()[1]);
+        }
+        write(_file, lines);
+    }
+
+
+    /**
+     * Merge the partial manifests of all shards of a diagram, print every
+     * problem found and write the merged manifest.
+     *
+     * @param uxfFilename_
+     *            the diagram filename
+     * @param options_
+     *            the run options (output dir)
+     * @param count_
+     *            the number of shards
+     * @return number of problems: missing or mismatched shards, files written by several panels
+     * @throws IOException
+     *             if a partial manifest cannot be read or the merged one cannot be written
+     */
+    public static int merge(String uxfFilename_, UxfOptions options_, int count_) throws IOException {
+        int problems = 0;
+        String diagramHash = null;
+        TreeMap<Integer, String[]> panels = new TreeMap<Integer, String[]>();
+        TreeMap<String, List<String[]>> byPath = new TreeMap<String, List<String[]>>();
+        for (int index = 1; index <= count_; index++) {
+            UxfShard shard = new UxfShard(index, count_);
+            File file = file(uxfFilename_, options_, "." + shard.getName());
+            if (!file.isFile()) {
+                System.out.println("Shards: " + uxfFilename_ + " shard " + shard + " missing - " + file);
+                problems++;
+                continue;
+            }
+            BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+            try {
+                String line = reader.readLine();
+                String expected = HEADER + " " + shard + " ";
+                if (line == null || !line.startsWith(expected)) {
+                    System.out.println("Shards: " + uxfFilename_ + " shard " + shard + " unknown format - " + file);
+                    problems++;
+                    continue;
+                }
+                String hash = line.substring(expected.length());
+                if (diagramHash == null) {
+                    diagramHash = hash;
+                } else if (!diagramHash.equals(hash)) {
+                    System.out.println("Shards: " + uxfFilename_ + " shard " + shard + " was made from another version of the diagram");
+                    problems++;
+                }
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split(" ", 3);
+                    if (parts.length < 3) {
+                        continue;
+                    }
+                    String[] panel = new String[] { parts[0], String.valueOf(index), parts[1], parts[2] };
+                    if (panels.put(Integer.valueOf(parts[0]), panel) != null) {
+                        System.out.println("Shards: " + uxfFilename_ + " panel " + parts[0] + " is in more than one shard");
+                        problems++;
+                    }
+                    // Case-insensitive file systems cannot hold paths differing only in case
+                    String key = parts[1].toLowerCase();
+                    List<String[]> writers = byPath.get(key);
+                    if (writers == null) {
+                        writers = new ArrayList<String[]>(1);
+                        byPath.put(key, writers);
+                    }
+                    writers.add(panel);
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        // Collisions: several panels writing one file, only the last would survive
+        for (List<String[]> writers : byPath.values()) {
+            if (writers.size() > 1) {
+                StringBuilder collision = new StringBuilder("Shards: collision " + writers.get(0)[2] + ":");
+                for (String[] panel : writers) {
+                    collision.append(" ").append(panel[3]).append(" (panel ").append(panel[0])
+                            .append(", shard ").append(panel[1]).append(")");
+                }
+                System.out.println(collision);
+                problems++;
+            }
+        }
+
+        List<String> lines = new ArrayList<String>(panels.size() + 1);
+        lines.add("# uxfparser shards " + count_ + " " + diagramHash);
+        for (String[] panel : panels.values()) {
+            lines.add(panel[0] + " " + panel[1] + " " + panel[2] + " " + panel[3]);
+        }
+        write(file(uxfFilename_, options_, MERGED_EXTENSION), lines);
+        System.out.println("Shards: " + uxfFilename_ + " " + count_ + " shards, " + panels.size() + " classes, "
+                + problems + " problems");
+        return problems;
+    }
+
+
+    /**
+     * Gets a manifest file of a diagram.
+     *
+     * @param uxfFilename_
+     *            the diagram filename
+     * @param options_
+     *            the run options (output dir)
+     * @param extension_
+     *            the file extension
+     * @return the file
+     */
+    private static File file(String uxfFilename_, UxfOptions options_, String extension_) {
+        File dir = new File(options_.getOutputJavaSrcDir(), UxfManifest.MANIFEST_DIR);
+        return new File(dir, UxfManifest.key(uxfFilename_) + extension_);
+    }
+
+
+    /**
+     * Write lines to a file, through a temp file.
+     *
+     * @param file_
+     *            the file
+     * @param lines_
+     *            the lines
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private static void write(File file_, List<String> lines_) throws IOException {
+        File dir = file_.getParentFile();
+        dir.mkdirs();
+        File tmp = new File(dir, file_.getName() + ".tmp");
+        BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8);
+        try {
+            for (String line : lines_) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+        Files.move(tmp.toPath(), file_.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+
+    /**
+     * Hex of a digest.
+     *
+     * @param bytes_
+     *            the digest
+     * @return the hex string
+     */
+    private static String toHex(byte[] bytes_) {
+        StringBuilder hex = new StringBuilder(bytes_.length * 2);
+        for (byte b : bytes_) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,452 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * UxfSnapshot. A compact binary copy of the parsed classes of one diagram (see
+ * --snapshot), so that a diagram can be emitted again, e.g. with another package
+ * prefix or imports list, without reading XML or parsing panel text.
+ * The snapshot is stored in [diagram dir]/.uxfparser/[diagram].snapshot and is only
+ * used while the SHA-256 of the diagram file matches the one it was made from.
+ * Snapshots are read into the heap, or memory-mapped when UxfInput.isMapping()
+ * is on, as a mapped file stays open (and locked on Windows) until the buffer is
+ * garbage collected.
+ * <pre>
+ * int magic, int version, byte[32] diagram hash, int panels, then per panel:
+ *   byte 0 (empty panel) or 1, byte[32] panel text digest, string class name,
+ *   string definition, string package (unprefixed, length -1 if none), string comments,
+ *   int fields, (string field, int line)*, int methods, (string method, int lines, int line*)*
+ * </pre>
+ * Strings are an int byte length and UTF-8 bytes.
+ *
+ */
+public class UxfSnapshot {
+
+    /**
+     * Receives the panels of a snapshot, in diagram order.
+     */
+    public interface Handler {
+
+        /**
+         * Called once for each panel of the snapshot.
+         *
+         * @param uxf_
+         *            the class, or null for a panel without text
+         * @param rawDigest_
+         *            the digest of the panel text (see UxfManifest.digest()), or null
+         */
+        public void panel(UxfJavaClass uxf_, byte[] rawDigest_);
+    }
+
+    /**
+     * The snapshot file extension.
+     */
+    public static final String SNAPSHOT_EXTENSION = ".snapshot";
+
+    /**
+     * First int of every snapshot.
+     */
+    private static final int MAGIC = 0x55584653;
+
+    /**
+     * The format version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Length of the SHA-256 digests.
+     */
+    private static final int DIGEST_LENGTH = 32;
+
+    /**
+     * The _file.
+     */
+    private final File _file;
+
+    /**
+     * The _diagram hash.
+     */
+    private final byte[] _diagramHash;
+
+    /**
+     * Encoded panels of a snapshot being recorded, by sequence.
+     */
+    private final Map<Integer, byte[]> _panels = new ConcurrentSkipListMap<Integer, byte[]>();
+
+    /**
+     * Buffer size of hashed files.
+     */
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The _content of a loaded snapshot, positioned after the header.
+     */
+    private ByteBuffer _content = null;
+
+    /**
+     * The _panel count of a loaded snapshot.
+     */
+    private int _panelCount = 0;
+
+    /**
+     * UxfSnapshot constructor.
+     *
+     * @param file_
+     *            the snapshot file
+     * @param diagramHash_
+     *            the hash of the diagram file
+     */
+    protected UxfSnapshot(File file_, byte[] diagramHash_) {
+        _file = file_;
+        _diagramHash = diagramHash_;
+    }
+
+
+    /**
+     * Open the snapshot of a diagram: loaded if it matches the diagram, otherwise
+     * empty, ready to record the panels of this run.
+     *
+     * @param uxfFilename_
+     *            the diagram filename
+     * @return the snapshot
+     * @throws IOException
+     *             if the diagram cannot be read
+     */
+    public static UxfSnapshot open(String uxfFilename_) throws IOException {
+        File diagram = UxfInput.file(uxfFilename_);
+        String name = diagram.getName();
+        if (!diagram.getPath().equals(uxfFilename_)) {
+            // Zip entry: one snapshot per entry
+            name += "_" + uxfFilename_.substring(diagram.getPath().length() + UxfInput.ENTRY_SEPARATOR.length()).replace('/', '_');
+        }
+        File file = new File(new File(diagram.getAbsoluteFile().getParentFile(), UxfManifest.MANIFEST_DIR),
+                name + SNAPSHOT_EXTENSION);
+        UxfSnapshot snapshot = new UxfSnapshot(file, hash(diagram));
+        if (file.isFile()) {
+            snapshot.load();
+        }
+        return snapshot;
+    }
+
+
+    /**
+     * Checks if the snapshot was loaded, i.e. it matches the diagram.
+     *
+     * @return true if the panels can be replayed
+     */
+    public boolean isLoaded() {
+        return _content != null;
+    }
+
+
+    /**
+     * Gets the snapshot file.
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return _file;
+    }
+
+
+    /**
+     * Hand every panel of a loaded snapshot to a handler, as classes generated
+     * with the given options.
+     *
+     * @param options_
+     *            the options (package prefix, imports list and output directory)
+     * @param handler_
+     *            the handler
+     * @return number of panels
+     * @throws IOException
+     *             if the mapped snapshot file was truncated while it was read
+     */
+    public int replay(UxfOptions options_, Handler handler_) throws IOException {
+        try {
+            replay(_content.duplicate(), options_, handler_);
+        } catch (InternalError e) {
+            // See UxfInput.MappedInputStream
+            throw new IOException("Snapshot changed while it was read: " + _file, e);
+        }
+        return _panelCount;
+    }
+
+
+    /**
+     * Hand the panels of the content to a handler.
+     *
+     * @param content_
+     *            the content, positioned after the header
+     * @param options_
+     *            the options
+     * @param handler_
+     *            the handler
+     */
+    private void replay(ByteBuffer content_, UxfOptions options_, Handler handler_) {
+        byte[] bytes = new byte[1024];
+        for (int x = 0; x < _panelCount; x++) {
+            if (content_.get() == 0) {
+                handler_.panel(null, null);
+                continue;
+            }
+            byte[] rawDigest = new byte[DIGEST_LENGTH];
+            content_.get(rawDigest);
+            UxfJavaClass uxf = new UxfJavaClass(options_.getOutputJavaPackagePrefix(), options_.getOutputJavaSrcDir());
+            if (options_.getImportsList() != null) {
+                uxf.setImportPackages(options_.getImportsList());
+            }
+            uxf.setClassName(readString(content_, bytes));
+            uxf.setClassDefinition(readString(content_, bytes));
+            String packageName = readString(content_, bytes);
+            if (packageName != null) {
+                uxf.setPackageName(packageName);
+            }
+            uxf.setComments(readString(content_, bytes));
+            int fields = content_.getInt();
+            for (int y = 0; y < fields; y++) {
+                String field = readString(content_, bytes);
+                uxf.addField(field, content_.getInt());
+            }
+            int methods = content_.getInt();
+            for (int y = 0; y < methods; y++) {
+                String method = readString(content_, bytes);
+                int[] lines = new int[content_.getInt()];
+                for (int z = 0; z < lines.length; z++) {
+                    lines[z] = content_.getInt();
+                }
+                uxf.addMethod(method, lines);
+            }
+            handler_.panel(uxf, rawDigest);
+        }
+    }
+
+
+    /**
+     * Record a parsed panel. May be called from several threads.
+     *
+     * @param sequence_
+     *            the position of the panel in the diagram
+     * @param uxf_
+     *            the class, or null for a panel without text
+     * @param rawDigest_
+     *            the digest of the panel text
+     */
+    public void record(int sequence_, UxfJavaClass uxf_, byte[] rawDigest_) {
+        if (uxf_ == null) {
+            _panels.put(sequence_, new byte[] { 0 });
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        buffer.put((byte) 1);
+        buffer.put(rawDigest_);
+        buffer = putString(buffer, uxf_.getClassName());
+        buffer = putString(buffer, uxf_.getClassDefinition());
+        buffer = putString(buffer, uxf_.getDiagramPackageName());
+        buffer = putString(buffer, uxf_.getComments());
+        buffer = ensure(buffer, 4);
+        buffer.putInt(uxf_.getFields().size());
+        for (int x = 0; x < uxf_.getFields().size(); x++) {
+            buffer = putString(buffer, uxf_.getFields().get(x));
+            buffer = ensure(buffer, 4);
+            buffer.putInt(uxf_.getFieldLines().get(x).intValue());
+        }
+        buffer = ensure(buffer, 4);
+        buffer.putInt(uxf_.getMethods().size());
+        for (int x = 0; x < uxf_.getMethods().size(); x++) {
+            buffer = putString(buffer, uxf_.getMethods().get(x));
+            int[] lines = uxf_.getMethodLines().get(x);
+            buffer = ensure(buffer, 4 + 4 * lines.length);
+            buffer.putInt(lines.length);
+            for (int line : lines) {
+                buffer.putInt(line);
+            }
+        }
+        _panels.put(sequence_, Arrays.copyOf(buffer.array(), buffer.position()));
+    }
+
+
+    /**
+     * Save the recorded panels.
+     *
+     * @throws IOException
+     *             if the snapshot cannot be written
+     */
+    public void save() throws IOException {
+        File dir = _file.getParentFile();
+        dir.mkdirs();
+        File tmp = new File(dir, _file.getName() + ".tmp");
+        FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(12 + DIGEST_LENGTH);
+            header.putInt(MAGIC).putInt(VERSION).put(_diagramHash).putInt(_panels.size());
+            header.flip();
+            ArrayList<ByteBuffer> buffers = new ArrayList<ByteBuffer>(_panels.size() + 1);
+            buffers.add(header);
+            for (byte[] panel : _panels.values()) {
+                buffers.add(ByteBuffer.wrap(panel));
+            }
+            ByteBuffer[] all = buffers.toArray(new ByteBuffer[buffers.size()]);
+            long remaining = 0;
+            for (ByteBuffer buffer : all) {
+                remaining += buffer.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(all);
+            }
+        } finally {
+            channel.close();
+        }
+        Files.move(tmp.toPath(), _file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+
+    /**
+     * Read (or map) the snapshot file and keep it if its header matches the diagram.
+     *
+     * @throws IOException
+     *             if the snapshot cannot be read
+     */
+    private void load() throws IOException {
+        FileChannel channel = FileChannel.open(_file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < 12 + DIGEST_LENGTH || size > Integer.MAX_VALUE) {
+                return;
+            }
+            ByteBuffer content;
+            if (UxfInput.isMapping()) {
+                content = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                content = ByteBuffer.allocate((int) size);
+                while (content.hasRemaining() && channel.read(content) >= 0) {
+                    // Read on
+                }
+                if (content.hasRemaining()) {
+                    // Truncated while it was read: made again on this run
+                    return;
+                }
+                content.flip();
+            }
+            if (content.getInt() != MAGIC || content.getInt() != VERSION) {
+                // Unknown format: made again on this run
+                return;
+            }
+            byte[] diagramHash = new byte[DIGEST_LENGTH];
+            content.get(diagramHash);
+            if (!Arrays.equals(diagramHash, _diagramHash)) {
+                return;
+            }
+            _panelCount = content.getInt();
+            _content = content;
+        } catch (InternalError e) {
+            throw new IOException("Snapshot changed while it was read: " + _file, e);
+        } finally {
+            channel.close();
+        }
+    }
+
+
+    /**
+     * SHA-256 of a file, streamed through a heap buffer: the file is not
+     * mapped, so it is closed (and can be replaced) as soon as it is hashed.
+     *
+     * @param file_
+     *            the file
+     * @return the hash
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    static byte[] hash(File file_) throws IOException {
+        MessageDigest digest = UxfManifest.newDigest();
+        FileChannel channel = FileChannel.open(file_.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        } finally {
+            channel.close();
+        }
+        return digest.digest();
+    }
+
+
+    /**
+     * Read a string.
+     *
+     * @param content_
+     *            the content
+     * @param bytes_
+     *            a scratch buffer, used if large enough
+     * @return the string, or null
+     */
+    private static String readString(ByteBuffer content_, byte[] bytes_) {
+        int length = content_.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = (length <= bytes_.length) ? bytes_ : new byte[length];
+        content_.get(bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Append a string, growing the buffer if needed.
+     *
+     * @param buffer_
+     *            the buffer
+     * @param value_
+     *            the string, or null
+     * @return buffer_, or a bigger copy
+     */
+    private static ByteBuffer putString(ByteBuffer buffer_, String value_) {
+        if (value_ == null) {
+            buffer_ = ensure(buffer_, 4);
+            buffer_.putInt(-1);
+            return buffer_;
+        }
+        byte[] bytes = value_.getBytes(StandardCharsets.UTF_8);
+        buffer_ = ensure(buffer_, 4 + bytes.length);
+        buffer_.putInt(bytes.length);
+        buffer_.put(bytes);
+        return buffer_;
+    }
+
+
+    /**
+     * Make room in a buffer.
+     *
+     * @param buffer_
+     *            the buffer
+     * @param bytes_
+     *            bytes needed
+     * @return buffer_, or a bigger copy
+     */
+    private static ByteBuffer ensure(ByteBuffer buffer_, int bytes_) {
+        if (buffer_.remaining() >= bytes_) {
+            return buffer_;
+        }
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer_.capacity() * 2, buffer_.position() + bytes_));
+        buffer_.flip();
+        bigger.put(buffer_);
+        return bigger;
+    }
+}
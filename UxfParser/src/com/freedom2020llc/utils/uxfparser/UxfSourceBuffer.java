@@ -0,0 +1,169 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * UxfSourceBuffer. Per-thread, reused buffers for emitting java sources: a char
+ * buffer the source is appended to, and a UTF-8 encoder with its byte buffer.
+ * Get one with get(); it stays valid until the next get() on the same thread.
+ *
+ */
+public class UxfSourceBuffer {
+
+    /**
+     * Initial buffer size.
+     */
+    private static final int INITIAL_SIZE = 8 * 1024;
+
+    /**
+     * Buffers grown beyond this are not kept for the next class.
+     */
+    private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+    /**
+     * The buffers of each thread.
+     */
+    private static final ThreadLocal<UxfSourceBuffer> POOL = new ThreadLocal<UxfSourceBuffer>() {
+        protected UxfSourceBuffer initialValue() {
+            return new UxfSourceBuffer();
+        }
+    };
+
+    /**
+     * The _chars.
+     */
+    private StringBuilder _chars = new StringBuilder(INITIAL_SIZE);
+
+    /**
+     * The _bytes.
+     */
+    private ByteBuffer _bytes = ByteBuffer.allocate(INITIAL_SIZE);
+
+    /**
+     * The _encoder. Replaces unmappable characters as String.getBytes() does.
+     */
+    private final CharsetEncoder _encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * Gets the buffers of the current thread.
+     *
+     * @return the buffers
+     */
+    public static UxfSourceBuffer get() {
+        return POOL.get();
+    }
+
+
+    /**
+     * Gets the char buffer, emptied.
+     *
+     * @return the char buffer
+     */
+    public StringBuilder chars() {
+        if (_chars.capacity() > MAX_RETAINED_SIZE) {
+            _chars = new StringBuilder(INITIAL_SIZE);
+        }
+        _chars.setLength(0);
+        return _chars;
+    }
+
+
+    /**
+     * Encode text as UTF-8 into the byte buffer.
+     *
+     * @param text_
+     *            the text
+     * @return the byte buffer, ready to read; valid until the next call on this thread
+     */
+    public ByteBuffer encode(CharSequence text_) {
+        if (_bytes.capacity() > MAX_RETAINED_SIZE) {
+            _bytes = ByteBuffer.allocate(INITIAL_SIZE);
+        }
+        CharBuffer in = CharBuffer.wrap(text_);
+        _encoder.reset();
+        _bytes.clear();
+        while (_encoder.encode(in, _bytes, true).isOverflow()) {
+            grow(text_.length());
+        }
+        while (_encoder.flush(_bytes).isOverflow()) {
+            grow(text_.length());
+        }
+        _bytes.flip();
+        return _bytes;
+    }
+
+
+    /**
+     * Encode text as UTF-8 straight to a channel, one byte buffer at a time.
+     *
+     * @param text_
+     *            the text
+     * @param channel_
+     *            the channel
+     * @return number of bytes written
+     * @throws IOException
+     *             if the channel cannot be written
+     */
+    public int write(CharSequence text_, WritableByteChannel channel_) throws IOException {
+        CharBuffer in = CharBuffer.wrap(text_);
+        _encoder.reset();
+        int written = 0;
+        CoderResult result;
+        do {
+            _bytes.clear();
+            result = _encoder.encode(in, _bytes, true);
+            written += drain(channel_);
+        } while (result.isOverflow());
+        do {
+            _bytes.clear();
+            result = _encoder.flush(_bytes);
+            written += drain(channel_);
+        } while (result.isOverflow());
+        return written;
+    }
+
+
+    /**
+     * Write the encoded bytes to a channel.
+     *
+     * @param channel_
+     *            the channel
+     * @return number of bytes written
+     * @throws IOException
+     *             if the channel cannot be written
+     */
+    private int drain(WritableByteChannel channel_) throws IOException {
+        _bytes.flip();
+        int written = 0;
+        while (_bytes.hasRemaining()) {
+            written += channel_.write(_bytes);
+        }
+        return written;
+    }
+
+
+    /**
+     * Grow the byte buffer, keeping the bytes encoded so far.
+     *
+     * @param length_
+     *            the length of the text being encoded
+     */
+    private void grow(int length_) {
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(_bytes.capacity() * 2, length_ + length_ / 8));
+        _bytes.flip();
+        larger.put(_bytes);
+        _bytes = larger;
+    }
+}
@@ -0,0 +1,287 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * UxfStats. Collects per-phase timings and per-class counters of a run (see
+ * --stats) and reports them as JSON: totals per phase, class time percentiles
+ * and the slowest classes. Safe to share between threads.
+ *
+ */
+public class UxfStats {
+
+    /**
+     * Number of slowest classes reported.
+     */
+    private static final int SLOWEST = 10;
+
+    /**
+     * Timings of one generated class.
+     */
+    private static class ClassRecord {
+
+        /** The diagram. */
+        final String _diagram;
+
+        /** The class name. */
+        final String _className;
+
+        /** The package name. */
+        final String _packageName;
+
+        /** The bytes emitted. */
+        final long _bytes;
+
+        /** The parse nanos. */
+        final long _parse;
+
+        /** The emit nanos. */
+        final long _emit;
+
+        /** The write nanos. */
+        final long _write;
+
+        ClassRecord(String diagram_, String className_, String packageName_, long bytes_, long parse_, long emit_, long write_) {
+            _diagram = diagram_;
+            _className = className_;
+            _packageName = packageName_;
+            _bytes = bytes_;
+            _parse = parse_;
+            _emit = emit_;
+            _write = write_;
+        }
+
+        long total() {
+            return _parse + _emit + _write;
+        }
+    }
+
+    /**
+     * The _start of the run.
+     */
+    private final long _start = System.nanoTime();
+
+    /**
+     * The _diagrams count.
+     */
+    private final AtomicInteger _diagrams = new AtomicInteger();
+
+    /**
+     * The _read nanos, XML reading outside of panel handling.
+     */
+    private final AtomicLong _read = new AtomicLong();
+
+    /**
+     * The _classes.
+     */
+    private final ConcurrentLinkedQueue<ClassRecord> _classes = new ConcurrentLinkedQueue<ClassRecord>();
+
+    /**
+     * Record a diagram that has been read.
+     *
+     * @param diagram_
+     *            the diagram
+     * @param readNanos_
+     *            time spent reading XML, not handling panels
+     */
+    public void recordDiagram(String diagram_, long readNanos_) {
+        _diagrams.incrementAndGet();
+        _read.addAndGet(readNanos_);
+    }
+
+
+    /**
+     * Record a generated class.
+     *
+     * @param diagram_
+     *            the diagram
+     * @param className_
+     *            the class name
+     * @param packageName_
+     *            the package name
+     * @param bytes_
+     *            the bytes emitted
+     * @param parseNanos_
+     *            the parse time
+     * @param emitNanos_
+     *            the emit time
+     * @param writeNanos_
+     *            the write time
+     */
+    public void recordClass(String diagram_, String className_, String packageName_, long bytes_,
+            long parseNanos_, long emitNanos_, long writeNanos_) {
+        _classes.add(new ClassRecord(diagram_, className_, packageName_, bytes_, parseNanos_, emitNanos_, writeNanos_));
+    }
+
+
+    /**
+     * Write the report as JSON.
+     *
+     * @param filename_
+     *            the report file, or null for System.out
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public void report(String filename_) throws IOException {
+        String json = toJson();
+        if (filename_ == null) {
+            System.out.println(json);
+            return;
+        }
+        Writer writer = Files.newBufferedWriter(Paths.get(filename_), StandardCharsets.UTF_8);
+        try {
+            writer.write(json);
+            writer.write('\n');
+        } finally {
+            writer.close();
+        }
+    }
+
+
+    /**
+     * Gets the report as JSON. Times are in milliseconds for phases and in
+     * microseconds for classes.
+     *
+     * @return the JSON report
+     */
+    public String toJson() {
+        List<ClassRecord> classes = new ArrayList<ClassRecord>(_classes);
+        long parse = 0;
+        long emit = 0;
+        long write = 0;
+        long bytes = 0;
+        long[] totals = new long[classes.size()];
+        for (int x = 0; x < totals.length; x++) {
+            ClassRecord record = classes.get(x);
+            parse += record._parse;
+            emit += record._emit;
+            write += record._write;
+            bytes += record._bytes;
+            totals[x] = record.total();
+        }
+        Arrays.sort(totals);
+        Collections.sort(classes, new Comparator<ClassRecord>() {
+            public int compare(ClassRecord a_, ClassRecord b_) {
+                return Long.compare(b_.total(), a_.total());
+            }
+        });
+
+        StringBuilder json = new StringBuilder(2048);
+        json.append("{\n");
+        json.append("  \"wallMillis\": ").append(millis(System.nanoTime() - _start)).append(",\n");
+        json.append("  \"diagrams\": ").append(_diagrams.get()).append(",\n");
+        json.append("  \"classes\": ").append(totals.length).append(",\n");
+        json.append("  \"bytesEmitted\": ").append(bytes).append(",\n");
+        json.append("  \"phaseMillis\": { ");
+        json.append("\"read\": ").append(millis(_read.get())).append(", ");
+        json.append("\"parse\": ").append(millis(parse)).append(", ");
+        json.append("\"emit\": ").append(millis(emit)).append(", ");
+        json.append("\"write\": ").append(millis(write)).append(" },\n");
+        json.append("  \"classMicros\": { ");
+        json.append("\"p50\": ").append(micros(percentile(totals, 50))).append(", ");
+        json.append("\"p90\": ").append(micros(percentile(totals, 90))).append(", ");
+        json.append("\"p99\": ").append(micros(percentile(totals, 99))).append(", ");
+        json.append("\"max\": ").append(micros(percentile(totals, 100))).append(" },\n");
+        json.append("  \"slowest\": [");
+        for (int x = 0; x < Math.min(SLOWEST, classes.size()); x++) {
+            ClassRecord record = classes.get(x);
+            json.append(x == 0 ? "\n" : ",\n");
+            json.append("    { \"diagram\": ").append(quote(record._diagram));
+            json.append(", \"class\": ").append(quote(record._className));
+            json.append(", \"package\": ").append(quote(record._packageName));
+            json.append(", \"micros\": ").append(micros(record.total()));
+            json.append(", \"parseMicros\": ").append(micros(record._parse));
+            json.append(", \"emitMicros\": ").append(micros(record._emit));
+            json.append(", \"writeMicros\": ").append(micros(record._write));
+            json.append(", \"bytes\": ").append(record._bytes).append(" }");
+        }
+        json.append(classes.isEmpty() ? "]\n" : "\n  ]\n");
+        json.append("}");
+        return json.toString();
+    }
+
+
+    /**
+     * Nearest-rank percentile of sorted values.
+     *
+     * @param sorted_
+     *            the sorted values
+     * @param percent_
+     *            the percentile, 1 to 100
+     * @return the value, 0 if there are none
+     */
+    private static long percentile(long[] sorted_, int percent_) {
+        if (sorted_.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percent_ / 100.0 * sorted_.length);
+        return sorted_[Math.max(0, rank - 1)];
+    }
+
+
+    /**
+     * Nanoseconds as milliseconds.
+     *
+     * @param nanos_
+     *            the nanoseconds
+     * @return the milliseconds
+     */
+    private static long millis(long nanos_) {
+        return nanos_ / 1000000L;
+    }
+
+
+    /**
+     * Nanoseconds as microseconds.
+     *
+     * @param nanos_
+     *            the nanoseconds
+     * @return the microseconds
+     */
+    private static long micros(long nanos_) {
+        return nanos_ / 1000L;
+    }
+
+
+    /**
+     * Quote a string for JSON.
+     *
+     * @param value_
+     *            the value
+     * @return the JSON string literal
+     */
+    private static String quote(String value_) {
+        if (value_ == null) {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder(value_.length() + 2);
+        quoted.append('"');
+        for (int x = 0; x < value_.length(); x++) {
+            char c = value_.charAt(x);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < ' ') {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        quoted.append('"');
+        return quoted.toString();
+    }
+}
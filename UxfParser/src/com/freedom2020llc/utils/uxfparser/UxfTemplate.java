@@ -0,0 +1,598 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * UxfTemplate. The layout of a generated java file (see --template). A template
+ * is compiled once into a plan of segments that is run for every class; no text
+ * is parsed while emitting. Template text is copied as is, except for tags:
+ * <ul>
+ * <li>${package}, ${className}, ${classDefinition}: the class names</li>
+ * <li>${comments}: the "Responsibilities" lines, each as " * line\n"</li>
+ * <li>${for imports}...${import}...${end}: once per import, e.g. "java.util.*"</li>
+ * <li>${for fields}...${field}...${end}: once per field declaration</li>
+ * <li>${for methods}...${method}...${end}: once per method, with its comment</li>
+ * <li>${if imports|fields|methods|comments}...${end}: only if there are any</li>
+ * <li>$${: a literal "${"</li>
+ * </ul>
+ * The default template is the layout UxfParser has always written.
+ *
+ */
+public class UxfTemplate {
+
+    /**
+     * The default template text.
+     */
+    public static final String DEFAULT_TEXT =
+            "/**\n"
+            + " *\n"
+            + " */\n"
+            + "package ${package};\n"
+            + "\n"
+            + "${for imports}import ${import};\n${end}"
+            + "/**\n"
+            + " * ${className}\n"
+            + " *\n"
+            + "${comments} */\n"
+            + "public ${classDefinition} {\n"
+            + "${if fields}\n${end}"
+            + "${for fields}    ${field}\n${end}"
+            + "${for methods}${method}\n${end}"
+            + "\n"
+            + "}\n";
+
+    /** Literal text. */
+    private static final int TEXT = 0;
+
+    /** ${package}. */
+    private static final int PACKAGE = 1;
+
+    /** ${className}. */
+    private static final int CLASS_NAME = 2;
+
+    /** ${classDefinition}. */
+    private static final int CLASS_DEFINITION = 3;
+
+    /** ${comments}. */
+    private static final int COMMENTS = 4;
+
+    /** ${import}. */
+    private static final int IMPORT = 5;
+
+    /** ${field}. */
+    private static final int FIELD = 6;
+
+    /** ${method}. */
+    private static final int METHOD = 7;
+
+    /** ${for imports}. */
+    private static final int FOR_IMPORTS = 8;
+
+    /** ${for fields}. */
+    private static final int FOR_FIELDS = 9;
+
+    /** ${for methods}. */
+    private static final int FOR_METHODS = 10;
+
+    /** ${if imports}. */
+    private static final int IF_IMPORTS = 11;
+
+    /** ${if fields}. */
+    private static final int IF_FIELDS = 12;
+
+    /** ${if methods}. */
+    private static final int IF_METHODS = 13;
+
+    /** ${if comments}. */
+    private static final int IF_COMMENTS = 14;
+
+    /**
+     * Tag names by kind, as written in templates.
+     */
+    private static final String[] TAGS = {
+        null, "package", "className", "classDefinition", "comments", "import", "field", "method",
+        "for imports", "for fields", "for methods", "if imports", "if fields", "if methods", "if comments"
+    };
+
+    /**
+     * The default template.
+     */
+    private static final UxfTemplate DEFAULT = compile(DEFAULT_TEXT, "default");
+
+    /**
+     * One step of the plan.
+     */
+    private static class Segment {
+
+        /** The kind. */
+        final int _kind;
+
+        /** The text of a TEXT segment. */
+        final String _text;
+
+        /** The body of a loop or condition. */
+        final Segment[] _body;
+
+        Segment(int kind_, String text_, Segment[] body_) {
+            _kind = kind_;
+            _text = text_;
+            _body = body_;
+        }
+    }
+
+    /**
+     * What is being emitted: the class and the current loop item.
+     */
+    private static class Cursor {
+
+        /** The class. */
+        final UxfJavaClass _uxf;
+
+        /** The imports, null until a loop needs them. */
+        List<String> _imports;
+
+        /** True if _imports are the import packages, written with ".*". */
+        boolean _wildcard;
+
+        /** The current loop item. */
+        int _item;
+
+        Cursor(UxfJavaClass uxf_) {
+            _uxf = uxf_;
+        }
+
+        List<String> imports() {
+            if (_imports == null) {
+                // Without a type index every import package is imported, as is
+                _wildcard = _uxf.getTypeIndex() == null;
+                _imports = _wildcard ? _uxf.getImportPackages() : _uxf.getImports();
+            }
+            return _imports;
+        }
+    }
+
+    /**
+     * The _plan.
+     */
+    private final Segment[] _plan;
+
+    /**
+     * The _name, for messages.
+     */
+    private final String _name;
+
+    /**
+     * The _digest of the template text.
+     */
+    private final String _digest;
+
+    /**
+     * UxfTemplate constructor.
+     *
+     * @param plan_
+     *            the compiled plan
+     * @param name_
+     *            the template name
+     * @param digest_
+     *            the digest of the template text
+     */
+    private UxfTemplate(Segment[] plan_, String name_, String digest_) {
+        _plan = plan_;
+        _name = name_;
+        _digest = digest_;
+    }
+
+
+    /**
+     * Gets the default template.
+     *
+     * @return the default template
+     */
+    public static UxfTemplate getDefault() {
+        return DEFAULT;
+    }
+
+
+    /**
+     * Load and compile a template file (UTF-8).
+     *
+     * @param filename_
+     *            the template file
+     * @return the template
+     * @throws IOException
+     *             if the file cannot be read
+     * @throws IllegalArgumentException
+     *             if the template is not valid
+     */
+    public static UxfTemplate load(String filename_) throws IOException {
+        String text = new String(Files.readAllBytes(new File(filename_).toPath()), StandardCharsets.UTF_8);
+        return compile(text.replace("\r\n", "\n"), filename_);
+    }
+
+
+    /**
+     * Compile a template.
+     *
+     * @param text_
+     *            the template text
+     * @param name_
+     *            the template name, for messages
+     * @return the template
+     * @throws IllegalArgumentException
+     *             if the template is not valid
+     */
+    public static UxfTemplate compile(String text_, String name_) {
+        Segment[] plan = compile(text_, name_, new int[1], -1, -1);
+        MessageDigest md = UxfManifest.newDigest();
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : md.digest(text_.getBytes(StandardCharsets.UTF_8))) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return new UxfTemplate(plan, name_, hex.toString());
+    }
+
+
+    /**
+     * Write a class.
+     *
+     * @param uxf_
+     *            the class
+     * @param out_
+     *            where the source goes
+     * @throws IOException
+     *             if out_ cannot be written
+     */
+    public void emit(UxfJavaClass uxf_, Appendable out_) throws IOException {
+        run(_plan, new Cursor(uxf_), out_, null);
+    }
+
+
+    /**
+     * Gets the panel line each line of the emitted source comes from: the
+     * ::package line for lines with the package, the field or method line for
+     * field and method lines, the class header (1) for everything else.
+     *
+     * @param uxf_
+     *            the class
+     * @return panel line (1 based) by source line (index 0 is source line 1)
+     */
+    public int[] panelLines(UxfJavaClass uxf_) {
+        LineRecorder recorder = new LineRecorder();
+        try {
+            run(_plan, new Cursor(uxf_), recorder, recorder);
+        } catch (IOException e) {
+            // LineRecorder does not throw
+            throw new IllegalStateException(e);
+        }
+        return Arrays.copyOf(recorder._lines, recorder._count);
+    }
+
+
+    /**
+     * Checks if this is the default template.
+     *
+     * @return true if default
+     */
+    public boolean isDefault() {
+        return this == DEFAULT;
+    }
+
+
+    /**
+     * Gets the template name.
+     *
+     * @return the name, "default" or the file name
+     */
+    public String getName() {
+        return _name;
+    }
+
+
+    /**
+     * Gets a digest of the template text. Every file changes with the template,
+     * so it is part of the incremental hash of every panel.
+     *
+     * @return hex digest
+     */
+    public String getDigest() {
+        return _digest;
+    }
+
+
+    /**
+     * Run a plan.
+     *
+     * @param plan_
+     *            the segments
+     * @param cursor_
+     *            the class and current item
+     * @param out_
+     *            where the source goes
+     * @param recorder_
+     *            the line recorder told about each segment, or null
+     * @throws IOException
+     *             if out_ cannot be written
+     */
+    private static void run(Segment[] plan_, Cursor cursor_, Appendable out_, LineRecorder recorder_) throws IOException {
+        UxfJavaClass uxf = cursor_._uxf;
+        for (Segment segment : plan_) {
+            if (recorder_ != null) {
+                recorder_.begin(segment, cursor_);
+            }
+            switch (segment._kind) {
+            case TEXT:
+                out_.append(segment._text);
+                break;
+            case PACKAGE:
+                out_.append(uxf.getPackageName());
+                break;
+            case CLASS_NAME:
+                out_.append(uxf.getClassName());
+                break;
+            case CLASS_DEFINITION:
+                out_.append(uxf.getClassDefinition());
+                break;
+            case COMMENTS:
+                out_.append(uxf.getComments());
+                break;
+            case IMPORT:
+                out_.append(cursor_.imports().get(cursor_._item));
+                if (cursor_._wildcard) {
+                    out_.append(".*");
+                }
+                break;
+            case FIELD:
+                out_.append(uxf.getFields().get(cursor_._item));
+                break;
+            case METHOD:
+                out_.append(uxf.getMethods().get(cursor_._item));
+                break;
+            case FOR_IMPORTS:
+            case FOR_FIELDS:
+            case FOR_METHODS:
+                int count = count(segment._kind, cursor_);
+                for (int x = 0; x < count; x++) {
+                    cursor_._item = x;
+                    run(segment._body, cursor_, out_, recorder_);
+                }
+                break;
+            default:
+                if (count(segment._kind, cursor_) > 0) {
+                    run(segment._body, cursor_, out_, recorder_);
+                }
+                break;
+            }
+        }
+    }
+
+
+    /**
+     * Gets the number of items a loop or condition looks at.
+     *
+     * @param kind_
+     *            the loop or condition kind
+     * @param cursor_
+     *            the class
+     * @return number of imports, fields, methods or comment characters
+     */
+    private static int count(int kind_, Cursor cursor_) {
+        switch (kind_) {
+        case FOR_IMPORTS:
+        case IF_IMPORTS:
+            return cursor_.imports().size();
+        case FOR_FIELDS:
+        case IF_FIELDS:
+            return cursor_._uxf.getFields().size();
+        case FOR_METHODS:
+        case IF_METHODS:
+            return cursor_._uxf.getMethods().size();
+        default:
+            return cursor_._uxf.getComments().length();
+        }
+    }
+
+
+    /**
+     * Compile the segments up to the matching ${end}, or to the end of the text.
+     *
+     * @param text_
+     *            the template text
+     * @param name_
+     *            the template name
+     * @param pos_
+     *            the position to start at, moved past what was compiled
+     * @param loop_
+     *            the enclosing loop kind, or -1
+     * @param open_
+     *            position of the ${for} or ${if} that needs an ${end}, or -1
+     * @return the segments
+     */
+    private static Segment[] compile(String text_, String name_, int[] pos_, int loop_, int open_) {
+        List<Segment> segments = new ArrayList<Segment>();
+        StringBuilder literal = new StringBuilder();
+        while (true) {
+            int tag = text_.indexOf("${", pos_[0]);
+            if (tag < 0) {
+                break;
+            }
+            if (tag > pos_[0] && text_.charAt(tag - 1) == '$') {
+                // "$${" is a literal "${"
+                literal.append(text_, pos_[0], tag - 1).append("${");
+                pos_[0] = tag + 2;
+                continue;
+            }
+            literal.append(text_, pos_[0], tag);
+            int close = text_.indexOf('}', tag);
+            if (close < 0) {
+                throw error(text_, name_, tag, "unclosed tag");
+            }
+            String name = text_.substring(tag + 2, close).trim();
+            pos_[0] = close + 1;
+            if (literal.length() > 0) {
+                segments.add(new Segment(TEXT, literal.toString(), null));
+                literal.setLength(0);
+            }
+            if ("end".equals(name)) {
+                if (open_ < 0) {
+                    throw error(text_, name_, tag, "${end} without ${for} or ${if}");
+                }
+                return segments.toArray(new Segment[segments.size()]);
+            }
+            int kind = kind(name);
+            if (kind < 0) {
+                throw error(text_, name_, tag, "unknown tag ${" + name + "}");
+            }
+            if ((kind == IMPORT && loop_ != FOR_IMPORTS) || (kind == FIELD && loop_ != FOR_FIELDS)
+                    || (kind == METHOD && loop_ != FOR_METHODS)) {
+                throw error(text_, name_, tag, "${" + name + "} outside of ${for " + name + "s}");
+            }
+            Segment[] body = null;
+            if (kind >= FOR_IMPORTS) {
+                body = compile(text_, name_, pos_, (kind <= FOR_METHODS) ? kind : loop_, tag);
+            }
+            segments.add(new Segment(kind, null, body));
+        }
+        if (open_ >= 0) {
+            throw error(text_, name_, open_, "no ${end} for " + text_.substring(open_, text_.indexOf('}', open_) + 1));
+        }
+        literal.append(text_, pos_[0], text_.length());
+        pos_[0] = text_.length();
+        if (literal.length() > 0) {
+            segments.add(new Segment(TEXT, literal.toString(), null));
+        }
+        return segments.toArray(new Segment[segments.size()]);
+    }
+
+
+    /**
+     * Gets the kind of a tag.
+     *
+     * @param name_
+     *            the tag name
+     * @return the kind, -1 if unknown
+     */
+    private static int kind(String name_) {
+        for (int x = 1; x < TAGS.length; x++) {
+            if (TAGS[x].equals(name_)) {
+                return x;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Build a template error.
+     *
+     * @param text_
+     *            the template text
+     * @param name_
+     *            the template name
+     * @param pos_
+     *            where the error is
+     * @param message_
+     *            what is wrong
+     * @return the exception to throw
+     */
+    private static IllegalArgumentException error(String text_, String name_, int pos_, String message_) {
+        return new IllegalArgumentException("Template " + name_ + " line "
+                + UxfPanelTokenizer.lineNumber(text_, pos_) + ": " + message_);
+    }
+
+
+    /**
+     * Records the panel line of each emitted line, without keeping the text.
+     */
+    private static class LineRecorder implements Appendable {
+
+        /** Panel line by emitted line. */
+        int[] _lines = new int[64];
+
+        /** Emitted lines so far. */
+        int _count = 0;
+
+        /** Panel line of the current line, 0 while unknown. */
+        int _current = 0;
+
+        /** The segment being emitted. */
+        Segment _segment;
+
+        /** The class and item being emitted. */
+        Cursor _cursor;
+
+        /** Line within the segment text. */
+        int _segmentLine;
+
+        void begin(Segment segment_, Cursor cursor_) {
+            _segment = segment_;
+            _cursor = cursor_;
+            _segmentLine = 0;
+            if (_current == 0) {
+                // Even if the value is empty, the line comes from it
+                _current = panelLine();
+            }
+        }
+
+        /**
+         * Gets the panel line of a line of the current segment.
+         *
+         * @return the panel line, 0 if the segment does not come from a panel line
+         */
+        int panelLine() {
+            UxfJavaClass uxf = _cursor._uxf;
+            switch (_segment._kind) {
+            case PACKAGE:
+                return 2;
+            case FIELD:
+                return uxf.getFieldLines().get(_cursor._item).intValue();
+            case METHOD:
+                // A blank line and a 3 line comment, then the signature and body lines
+                int[] lines = uxf.getMethodLines().get(_cursor._item);
+                int body = _segmentLine - 4;
+                if (body >= 0 && body < lines.length) {
+                    return lines[body];
+                }
+                return lines.length > 0 ? lines[0] : 1;
+            default:
+                return 0;
+            }
+        }
+
+        public Appendable append(char c_) {
+            if (_current == 0) {
+                _current = panelLine();
+            }
+            if (c_ == '\n') {
+                if (_count == _lines.length) {
+                    _lines = Arrays.copyOf(_lines, _lines.length * 2);
+                }
+                _lines[_count++] = Math.max(1, _current);
+                _current = 0;
+                _segmentLine++;
+            }
+            return this;
+        }
+
+        public Appendable append(CharSequence text_) {
+            return append(text_, 0, text_.length());
+        }
+
+        public Appendable append(CharSequence text_, int start_, int end_) {
+            for (int x = start_; x < end_; x++) {
+                append(text_.charAt(x));
+            }
+            return this;
+        }
+    }
+}
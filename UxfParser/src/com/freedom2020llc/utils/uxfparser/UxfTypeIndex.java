@@ -0,0 +1,298 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * UxfTypeIndex. Maps the class names of one or more diagrams to their packages
+ * (see --precise-imports), from one header scan over all panels (see
+ * UxfPanelHeader). A class then imports only the diagram classes it references,
+ * one by one. The imports list packages are only imported (with ".*") when a
+ * class references a name the index cannot resolve, and then all of them, as
+ * before: the output dir is usually the application's source tree, so a
+ * diagram package may also hold hand-written classes the index does not know.
+ * Names found in two packages are left to the imports list, as before. A
+ * diagram class named like a java.lang class (e.g. Record) is imported too,
+ * so it is not taken for the java.lang one.
+ * The index is built before generating and only read while generating.
+ *
+ */
+public class UxfTypeIndex {
+
+    /**
+     * Package of a class name found in more than one package.
+     */
+    private static final String AMBIGUOUS = "";
+
+    /**
+     * Whether a name is a java.lang class, by name.
+     */
+    private static final Map<String, Boolean> JAVA_LANG = new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * The _types: package by class name.
+     */
+    private final Map<String, String> _types = new ConcurrentHashMap<String, String>();
+
+    /**
+     * The _qualified class names.
+     */
+    private final Set<String> _qualified = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The _digest of the index, null until first asked for.
+     */
+    private volatile String _digest = null;
+
+    /**
+     * Add the classes of a diagram.
+     *
+     * @param uxfFilename_
+     *            the UXF filename
+     * @param options_
+     *            the options of the diagram (package prefix)
+     * @return number of classes added
+     * @throws IOException
+     *             if the diagram cannot be read
+     * @throws XMLStreamException
+     *             if the diagram is not well formed
+     */
+    public int read(String uxfFilename_, final UxfOptions options_) throws IOException, XMLStreamException {
+        final int[] count = new int[1];
+        UxfPanelReader.read(uxfFilename_, new UxfPanelHandler() {
+            public void panel(String rawtext_) {
+                UxfPanelHeader header = UxfPanelHeader.scan(rawtext_);
+                if (header != null) {
+                    add(header.getClassName(), header.getPackageName(options_.getOutputJavaPackagePrefix()));
+                    count[0]++;
+                }
+            }
+        });
+        return count[0];
+    }
+
+
+    /**
+     * Add a class.
+     *
+     * @param className_
+     *            the class name
+     * @param packageName_
+     *            the package name, with the package prefix
+     */
+    public void add(String className_, String packageName_) {
+        _qualified.add(packageName_ + "." + className_);
+        String known = _types.putIfAbsent(className_, packageName_);
+        if (known != null && !known.equals(packageName_)) {
+            _types.put(className_, AMBIGUOUS);
+        }
+        _digest = null;
+    }
+
+
+    /**
+     * Gets the package of a class name.
+     *
+     * @param className_
+     *            the simple class name
+     * @return the package name, or null if the name is unknown or in several packages
+     */
+    public String resolve(String className_) {
+        String packageName = _types.get(className_);
+        return (packageName == null || packageName == AMBIGUOUS) ? null : packageName;
+    }
+
+
+    /**
+     * Gets the number of class names.
+     *
+     * @return the size
+     */
+    public int size() {
+        return _types.size();
+    }
+
+
+    /**
+     * Gets a digest of the whole index. The imports of any class may change
+     * with it, so it is part of the incremental hash of every panel.
+     *
+     * @return hex digest
+     */
+    public String getDigest() {
+        String digest = _digest;
+        if (digest == null) {
+            MessageDigest md = UxfManifest.newDigest();
+            for (String name : new TreeSet<String>(_qualified)) {
+                md.update(name.getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+            }
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : md.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(b & 0xf, 16));
+            }
+            digest = hex.toString();
+            _digest = digest;
+        }
+        return digest;
+    }
+
+
+    /**
+     * Gets the imports of a class: the diagram classes it references, sorted,
+     * then the imports list packages it may need.
+     *
+     * @param uxf_
+     *            the class
+     * @return the imports, e.g. "com.my.model.Collar" or "java.util.*"
+     */
+    public List<String> imports(UxfJavaClass uxf_) {
+
+        // Names the class declares itself are not references
+        Set<String> declared = new TreeSet<String>();
+        declared.add(uxf_.getClassName());
+        for (String field : uxf_.getFields()) {
+            declared.add(declaredName(field));
+        }
+        Set<String> names = new TreeSet<String>();
+        references(uxf_.getClassDefinition(), names);
+        for (String field : uxf_.getFields()) {
+            references(field, names);
+        }
+        for (String method : uxf_.getMethods()) {
+            references(method, names);
+        }
+
+        List<String> imports = new ArrayList<String>();
+        boolean unresolved = false;
+        boolean ambiguous = false;
+        for (String name : names) {
+            if (declared.contains(name)) {
+                continue;
+            }
+            // Diagram classes first: their import shadows a java.lang class of the same name
+            String packageName = _types.get(name);
+            if (packageName == null) {
+                unresolved |= !isJavaLang(name);
+            } else if (packageName == AMBIGUOUS) {
+                // In the class's own package it needs no import
+                ambiguous |= !_qualified.contains(uxf_.getPackageName() + "." + name);
+            } else if (!packageName.equals(uxf_.getPackageName())) {
+                imports.add(packageName + "." + name);
+            }
+        }
+
+        // Wildcards, only for what the index cannot resolve
+        if (unresolved || ambiguous) {
+            for (String imp : uxf_.getImportPackages()) {
+                imports.add(imp + ".*");
+            }
+        }
+        return imports;
+    }
+
+
+    /**
+     * Gets the name a field declares: the last word before "=" or ";".
+     *
+     * @param field_
+     *            the field source
+     * @return the field name
+     */
+    private static String declaredName(String field_) {
+        int end = field_.indexOf('=');
+        if (end < 0) {
+            end = field_.indexOf(';');
+        }
+        if (end < 0) {
+            end = field_.length();
+        }
+        while (end > 0 && !Character.isJavaIdentifierPart(field_.charAt(end - 1))) {
+            end--;
+        }
+        int start = end;
+        while (start > 0 && Character.isJavaIdentifierPart(field_.charAt(start - 1))) {
+            start--;
+        }
+        return field_.substring(start, end);
+    }
+
+
+    /**
+     * Collect the names in java source that may be types: unqualified
+     * identifiers starting with an upper case letter, outside of comments
+     * and literals.
+     *
+     * @param text_
+     *            the source
+     * @param names_
+     *            the set to add to
+     */
+    static void references(String text_, Set<String> names_) {
+        int length = text_.length();
+        int x = 0;
+        while (x < length) {
+            char c = text_.charAt(x);
+            if (c == '/' && text_.startsWith("//", x)) {
+                x = UxfPanelTokenizer.lineEnd(text_, x, length);
+            } else if (c == '/' && text_.startsWith("/*", x)) {
+                int end = text_.indexOf("*/", x + 2);
+                x = (end < 0) ? length : end + 2;
+            } else if (c == '"' || c == '\'') {
+                x++;
+                while (x < length && text_.charAt(x) != c && text_.charAt(x) != '\n') {
+                    x += (text_.charAt(x) == '\\') ? 2 : 1;
+                }
+                x++;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = x;
+                while (x < length && Character.isJavaIdentifierPart(text_.charAt(x))) {
+                    x++;
+                }
+                // "a.B" is qualified, "B.c" is not
+                if (Character.isUpperCase(c) && (start == 0 || text_.charAt(start - 1) != '.')) {
+                    names_.add(text_.substring(start, x));
+                }
+            } else {
+                x++;
+            }
+        }
+    }
+
+
+    /**
+     * Checks if a name is a java.lang class, which needs no import.
+     *
+     * @param name_
+     *            the simple name
+     * @return true if java.lang has a class of that name
+     */
+    private static boolean isJavaLang(String name_) {
+        Boolean known = JAVA_LANG.get(name_);
+        if (known == null) {
+            try {
+                Class.forName("java.lang." + name_, false, null);
+                known = Boolean.TRUE;
+            } catch (ClassNotFoundException e) {
+                known = Boolean.FALSE;
+            } catch (LinkageError e) {
+                known = Boolean.FALSE;
+            }
+            JAVA_LANG.put(name_, known);
+        }
+        return known.booleanValue();
+    }
+}
@@ -0,0 +1,430 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+
+import org.xml.sax.SAXException;
+
+/**
+ * UxfVerifier. Checks that the classes of one or more diagrams compile (see --verify),
+ * without writing anything: the emitted sources are kept in memory and handed to
+ * the system java compiler through an in-memory file manager, in batches. Every
+ * source is visible to every batch (as the source path), so classes may use each
+ * other, but only the diagnostics of the batch's own sources are reported.
+ * Diagnostics are reported against the diagram line and the panel line the
+ * generated code comes from (see UxfJavaClass.getPanelLines()).
+ *
+ */
+public class UxfVerifier implements UxfPanelHandler {
+
+    /**
+     * Sources compiled per batch.
+     */
+    public static final int BATCH_SIZE = 250;
+
+    /**
+     * Diagnostic code of a missing package, on an import or a qualified name.
+     */
+    private static final String MISSING_PACKAGE = "compiler.err.doesnt.exist";
+
+    /**
+     * One generated source, held in memory.
+     */
+    private static class Source extends SimpleJavaFileObject {
+
+        /** The binary class name. */
+        final String _binaryName;
+
+        /** The package name. */
+        final String _packageName;
+
+        /** The source. */
+        final String _content;
+
+        /** The diagram. */
+        final String _diagram;
+
+        /** The panel number in the diagram, 1 based. */
+        final int _panel;
+
+        /** The diagram line the panel text starts on, 0 if unknown. */
+        final int _diagramLine;
+
+        /** The panel line of each source line. */
+        final int[] _panelLines;
+
+        Source(UxfJavaClass javaClass_, String content_, String diagram_, int panel_, int diagramLine_) {
+            super(URI.create("string:///" + javaClass_.getPackageName().replace('.', '/') + "/"
+                    + javaClass_.getClassName() + Kind.SOURCE.extension), Kind.SOURCE);
+            _packageName = javaClass_.getPackageName();
+            _binaryName = _packageName + "." + javaClass_.getClassName();
+            _content = content_;
+            _diagram = diagram_;
+            _panel = panel_;
+            _diagramLine = diagramLine_;
+            _panelLines = javaClass_.getPanelLines();
+        }
+
+        public CharSequence getCharContent(boolean ignoreEncodingErrors_) {
+            return _content;
+        }
+
+        /**
+         * Gets a line of the source.
+         *
+         * @param line_
+         *            the line, 1 based
+         * @return the line text, empty if there is no such line
+         */
+        String line(long line_) {
+            int start = 0;
+            for (long x = 1; x < line_ && start >= 0; x++) {
+                start = _content.indexOf('\n', start);
+                start = (start < 0) ? -1 : start + 1;
+            }
+            if (start < 0 || line_ < 1) {
+                return "";
+            }
+            int end = _content.indexOf('\n', start);
+            return _content.substring(start, end < 0 ? _content.length() : end);
+        }
+
+        /**
+         * Checks if a source line is an import of the import block: it starts
+         * with "import" and only the package line, other imports, blank lines
+         * and comments come before it.
+         *
+         * @param line_
+         *            the line, 1 based
+         * @return true if the line is an import
+         */
+        boolean isImport(long line_) {
+            boolean comment = false;
+            for (long x = 1; x <= line_; x++) {
+                String text = line(x).trim();
+                if (x == line_) {
+                    return !comment && text.startsWith("import ");
+                }
+                if (comment) {
+                    comment = !text.contains("*/");
+                } else if (text.startsWith("/*")) {
+                    comment = !text.contains("*/");
+                } else if (!text.isEmpty() && !text.startsWith("//") && !text.startsWith("package ") && !text.startsWith("import ")) {
+                    // Past the import block
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Gets the panel line a source line comes from.
+         *
+         * @param line_
+         *            the source line, 1 based
+         * @return the panel line, 1 based
+         */
+        int panelLine(long line_) {
+            return (line_ >= 1 && line_ <= _panelLines.length) ? _panelLines[(int) line_ - 1] : 1;
+        }
+    }
+
+    /**
+     * Serves the sources from memory and drops compiled classes.
+     */
+    private class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+        /** The sources by package. */
+        private final Map<String, List<JavaFileObject>> _packages = new HashMap<String, List<JavaFileObject>>();
+
+        MemoryFileManager(StandardJavaFileManager fileManager_) {
+            super(fileManager_);
+            for (Source source : _sources.values()) {
+                List<JavaFileObject> sources = _packages.get(source._packageName);
+                if (sources == null) {
+                    sources = new ArrayList<JavaFileObject>();
+                    _packages.put(source._packageName, sources);
+                }
+                sources.add(source);
+            }
+        }
+
+        public boolean hasLocation(Location location_) {
+            return location_ == StandardLocation.SOURCE_PATH || super.hasLocation(location_);
+        }
+
+        public Iterable<JavaFileObject> list(Location location_, String packageName_, Set<JavaFileObject.Kind> kinds_, boolean recurse_)
+                throws IOException {
+            if (location_ != StandardLocation.SOURCE_PATH) {
+                return super.list(location_, packageName_, kinds_, recurse_);
+            }
+            if (!kinds_.contains(JavaFileObject.Kind.SOURCE)) {
+                return Collections.emptyList();
+            }
+            List<JavaFileObject> sources = new ArrayList<JavaFileObject>();
+            for (Map.Entry<String, List<JavaFileObject>> entry : _packages.entrySet()) {
+                String name = entry.getKey();
+                if (name.equals(packageName_) || (recurse_ && name.startsWith(packageName_ + "."))) {
+                    sources.addAll(entry.getValue());
+                }
+            }
+            return sources;
+        }
+
+        public String inferBinaryName(Location location_, JavaFileObject file_) {
+            if (file_ instanceof Source) {
+                return ((Source) file_)._binaryName;
+            }
+            return super.inferBinaryName(location_, file_);
+        }
+
+        public boolean isSameFile(FileObject a_, FileObject b_) {
+            if (a_ instanceof Source || b_ instanceof Source) {
+                return a_ == b_;
+            }
+            return super.isSameFile(a_, b_);
+        }
+
+        public JavaFileObject getJavaFileForInput(Location location_, String className_, JavaFileObject.Kind kind_)
+                throws IOException {
+            if (location_ == StandardLocation.SOURCE_PATH) {
+                return (kind_ == JavaFileObject.Kind.SOURCE) ? _sources.get(className_) : null;
+            }
+            return super.getJavaFileForInput(location_, className_, kind_);
+        }
+
+        public JavaFileObject getJavaFileForOutput(Location location_, String className_, JavaFileObject.Kind kind_, FileObject sibling_) {
+            return new SimpleJavaFileObject(URI.create("mem:///" + className_.replace('.', '/') + kind_.extension), kind_) {
+                public OutputStream openOutputStream() {
+                    return OutputStream.nullOutputStream();
+                }
+            };
+        }
+    }
+
+    /**
+     * The _sources by binary name. A later panel replaces an earlier one of the
+     * same class, as it overwrites its file when generating.
+     */
+    private final Map<String, Source> _sources = new LinkedHashMap<String, Source>();
+
+    /**
+     * The _options of the current diagram.
+     */
+    private UxfOptions _options = null;
+
+    /**
+     * The _diagram being read.
+     */
+    private String _diagram = "";
+
+    /**
+     * The _panel count of the diagram being read.
+     */
+    private int _panel = 0;
+
+    /**
+     * The _allow missing packages flag: imports of packages not on the class
+     * path are warnings, not errors. Qualified names in the class body stay errors.
+     */
+    private boolean _allowMissingPackages = false;
+
+    /**
+     * Sets the allow missing packages flag (see --allow-missing-packages). Off by
+     * default: an import javac rejects is an error, as it is when compiling the
+     * written files. Only the import block is let through, a missing package of
+     * a qualified name in a field or method is still an error.
+     *
+     * @param allowMissingPackages_
+     *            true to report imports of missing packages once, as warnings
+     */
+    public void setAllowMissingPackages(boolean allowMissingPackages_) {
+        _allowMissingPackages = allowMissingPackages_;
+    }
+
+
+    /**
+     * Read the panels of a diagram into memory.
+     *
+     * @param uxfFilename_
+     *            the UXF filename
+     * @param options_
+     *            the diagram options
+     * @throws IOException
+     *             if the diagram cannot be read
+     * @throws XMLStreamException
+     *             if the diagram is not well formed (streaming reader)
+     * @throws SAXException
+     *             if the diagram is not well formed (DOM reader)
+     * @throws ParserConfigurationException
+     *             if no document-loader can be created (DOM reader)
+     */
+    public void read(String uxfFilename_, UxfOptions options_)
+            throws IOException, XMLStreamException, SAXException, ParserConfigurationException {
+        _options = options_;
+        _diagram = uxfFilename_;
+        _panel = 0;
+        if (options_.isUseDom()) {
+            UxfPanelReader.readDocument(uxfFilename_, this);
+        } else {
+            UxfPanelReader.read(uxfFilename_, this);
+        }
+    }
+
+
+    /**
+     * @see com.freedom2020llc.utils.uxfparser.UxfPanelHandler#panel(java.lang.String)
+     */
+    public void panel(String rawtext_) {
+        panel(rawtext_, 0);
+    }
+
+
+    /**
+     * Parse and emit a panel into memory.
+     *
+     * @param rawtext_
+     *            the raw panel text
+     * @param line_
+     *            the diagram line the text starts on, 0 if unknown
+     * @see com.freedom2020llc.utils.uxfparser.UxfPanelHandler#panel(java.lang.String, int)
+     */
+    public void panel(String rawtext_, int line_) {
+        _panel++;
+        UxfJavaClass uxf = UxfJavaClass.parse(
+                _options.getOutputJavaPackagePrefix(),
+                rawtext_,
+                _options.getOutputJavaSrcDir(),
+                _options.getImportsList()
+        );
+        if (uxf == null) {
+            return;
+        }
+        uxf.setTypeIndex(_options.getTypeIndex());
+        uxf.setTemplate(_options.getTemplate());
+        Source source = new Source(uxf, uxf.toString(), _diagram, _panel, line_);
+        _sources.remove(source._binaryName);
+        _sources.put(source._binaryName, source);
+    }
+
+
+    /**
+     * Gets the number of classes read.
+     *
+     * @return the class count
+     */
+    public int getClassCount() {
+        return _sources.size();
+    }
+
+
+    /**
+     * Compile all classes read and print the diagnostics.
+     *
+     * @param classpath_
+     *            the class path the generated classes are compiled against, or null
+     * @return the number of errors
+     * @throws IOException
+     *             if the file manager fails
+     */
+    public int verify(String classpath_) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("--verify needs a JDK, no system java compiler found");
+        }
+        List<String> compilerOptions = new ArrayList<String>(Arrays.asList("-proc:none", "-implicit:none", "-Xlint:none"));
+        if (classpath_ != null) {
+            compilerOptions.add("-classpath");
+            compilerOptions.add(classpath_);
+        }
+
+        int errors = 0;
+        Set<String> missingPackages = new LinkedHashSet<String>();
+        List<Source> sources = new ArrayList<Source>(_sources.values());
+        StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(null, Locale.ROOT, StandardCharsets.UTF_8);
+        MemoryFileManager fileManager = new MemoryFileManager(standardFileManager);
+        try {
+            for (int from = 0; from < sources.size(); from += BATCH_SIZE) {
+                List<Source> batch = sources.subList(from, Math.min(sources.size(), from + BATCH_SIZE));
+                Set<JavaFileObject> batchSet = new HashSet<JavaFileObject>(batch);
+                DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+                compiler.getTask(null, fileManager, diagnostics, compilerOptions, null, batch).call();
+                for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                    JavaFileObject file = diagnostic.getSource();
+                    if (file != null && !batchSet.contains(file)) {
+                        // Reported by the batch the source belongs to
+                        continue;
+                    }
+                    if (_allowMissingPackages && MISSING_PACKAGE.equals(diagnostic.getCode())
+                            && file != null && ((Source) file).isImport(diagnostic.getLineNumber())) {
+                        missingPackages.add(diagnostic.getMessage(Locale.ROOT));
+                        continue;
+                    }
+                    if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                        errors++;
+                    }
+                    report(diagnostic, (Source) file);
+                }
+            }
+        } finally {
+            fileManager.close();
+        }
+        for (String missingPackage : missingPackages) {
+            System.out.println("warning: " + missingPackage + " (imported by generated classes, add it with --classpath)");
+        }
+        return errors;
+    }
+
+
+    /**
+     * Print a diagnostic against the diagram and panel line it comes from.
+     *
+     * @param diagnostic_
+     *            the diagnostic
+     * @param source_
+     *            the source, or null
+     */
+    private static void report(Diagnostic<? extends JavaFileObject> diagnostic_, Source source_) {
+        String kind = diagnostic_.getKind().toString().toLowerCase(Locale.ROOT).replace('_', ' ');
+        if (source_ == null) {
+            System.out.println(kind + ": " + diagnostic_.getMessage(Locale.ROOT));
+            return;
+        }
+        long line = diagnostic_.getLineNumber();
+        int panelLine = source_.panelLine(line);
+        String location = source_._diagram + (source_._diagramLine > 0 ? ":" + (source_._diagramLine + panelLine - 1) : "");
+        System.out.println(location + ": " + kind + ": " + diagnostic_.getMessage(Locale.ROOT));
+        System.out.println("    in " + source_._binaryName + ", panel " + source_._panel + " line " + panelLine
+                + ", generated line " + line + ":");
+        System.out.println("    " + source_.line(line).trim());
+    }
+}
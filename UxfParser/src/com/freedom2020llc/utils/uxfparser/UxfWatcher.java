@@ -0,0 +1,186 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UxfWatcher. Keeps the JVM warm and regenerates a diagram's java classes each
+ * time the diagram is saved (see --watch). Bursts of events from one save are
+ * debounced, only the saved diagrams are read again, and since they are read
+ * incrementally (see UxfManifest) only their changed panels are generated.
+ * Diagrams created after the watcher starts are not picked up. A diagram in a
+ * zip file is regenerated whenever the zip file changes.
+ *
+ */
+public class UxfWatcher {
+
+    /**
+     * Quiet time after the last event before regenerating.
+     */
+    public static final long DEBOUNCE_MILLIS = 20;
+
+    /**
+     * The _diagrams and their options.
+     */
+    private final Map<String, UxfOptions> _diagrams = new LinkedHashMap<String, UxfOptions>();
+
+    /**
+     * The _files watched, by absolute path, and the diagrams stored in each.
+     */
+    private final Map<Path, List<String>> _files = new LinkedHashMap<Path, List<String>>();
+
+    /**
+     * The _worker pool, or null.
+     */
+    private final ExecutorService _executor;
+
+    /**
+     * UxfWatcher constructor.
+     *
+     * @param executor_
+     *            the worker pool, or null to generate serially
+     */
+    public UxfWatcher(ExecutorService executor_) {
+        _executor = executor_;
+    }
+
+
+    /**
+     * Add a diagram to watch. Its options are made incremental.
+     *
+     * @param uxfFilename_
+     *            the UXF filename
+     * @param options_
+     *            the diagram options
+     */
+    public void add(String uxfFilename_, UxfOptions options_) {
+        UxfOptions options = options_.derive(options_.getOutputJavaSrcDir(), options_.getOutputJavaPackagePrefix(), options_.getImportsList());
+        options.setIncremental(true);
+        _diagrams.put(uxfFilename_, options);
+        Path file = UxfInput.file(uxfFilename_).toPath().toAbsolutePath().normalize();
+        List<String> diagrams = _files.get(file);
+        if (diagrams == null) {
+            diagrams = new ArrayList<String>();
+            _files.put(file, diagrams);
+        }
+        diagrams.add(uxfFilename_);
+    }
+
+
+    /**
+     * Watch until interrupted.
+     *
+     * @throws IOException
+     *             if a directory cannot be watched
+     */
+    public void run() throws IOException {
+        WatchService watchService = FileSystems.getDefault().newWatchService();
+        try {
+            Map<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+            for (Path file : _files.keySet()) {
+                Path directory = file.getParent();
+                if (!directories.containsValue(directory)) {
+                    directories.put(directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY), directory);
+                }
+            }
+            UxfLog.info("Watching " + _diagrams.size() + " diagrams in " + directories.size() + " directories");
+
+            while (true) {
+                Set<Path> changed = new LinkedHashSet<Path>();
+                WatchKey key = watchService.take();
+
+                // Debounce: collect events until none arrive for a while
+                while (key != null) {
+                    collect(key, directories.get(key), changed);
+                    key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                for (Path file : changed) {
+                    for (String diagram : _files.get(file)) {
+                        regenerate(diagram);
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            watchService.close();
+        }
+    }
+
+
+    /**
+     * Collect the watched files changed by the events of a key.
+     *
+     * @param key_
+     *            the signalled key
+     * @param directory_
+     *            the directory of the key
+     * @param changed_
+     *            the set to add to
+     */
+    private void collect(WatchKey key_, Path directory_, Set<Path> changed_) {
+        for (WatchEvent<?> event : key_.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                // Events were lost, check every file of the directory
+                for (Path file : _files.keySet()) {
+                    if (file.getParent().equals(directory_)) {
+                        changed_.add(file);
+                    }
+                }
+                continue;
+            }
+            Path file = directory_.resolve((Path) event.context());
+            if (_files.containsKey(file)) {
+                changed_.add(file);
+            }
+        }
+        key_.reset();
+    }
+
+
+    /**
+     * Regenerate one diagram and print how long it took.
+     *
+     * @param diagram_
+     *            the diagram
+     */
+    private void regenerate(String diagram_) {
+        long start = System.nanoTime();
+        UxfOutputWriter writer = UxfOutputWriter.create(_diagrams.get(diagram_));
+        try {
+            try {
+                UxfParser.generate(diagram_, _diagrams.get(diagram_), _executor, writer, null);
+            } finally {
+                writer.close();
+            }
+            UxfLog.info("Watch: " + diagram_ + " regenerated in "
+                    + (System.nanoTime() - start) / 1000000L + " ms (" + writer + ")");
+        } catch (Exception ex) {
+            // Possibly saved half way, the next save triggers another run
+            System.err.println("Watch: " + diagram_ + " failed - " + ex);
+        } catch (InternalError ex) {
+            // A mapped file truncated while it was read, if an embedding process turned mapping on
+            System.err.println("Watch: " + diagram_ + " failed - " + ex);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+
+/**
+ * UxfXmlConfig. How diagrams are parsed (see UxfPanelReader): external
+ * references only through an entity catalog (see UxfEntityCatalog), no direct
+ * network or file access, and the JDK XML processing limits (see --xml-limit),
+ * so one broken or hostile diagram fails fast instead of stalling a build or
+ * filling the heap. The defaults are far above what a UXF diagram needs.
+ *
+ */
+public class UxfXmlConfig {
+
+    /**
+     * The limits that can be set, and their defaults (see the jdk.xml.* properties of the JDK).
+     */
+    private static final String[][] LIMITS = {
+        { "entityExpansionLimit", "10000" },
+        { "entityReplacementLimit", "300000" },
+        { "totalEntitySizeLimit", "10000000" },
+        { "maxGeneralEntitySizeLimit", "1000000" },
+        { "maxParameterEntitySizeLimit", "1000000" },
+        { "maxElementDepth", "256" },
+        { "elementAttributeLimit", "1000" },
+        { "maxXMLNameLimit", "1000" },
+    };
+
+    /**
+     * The _limits by name.
+     */
+    private final Map<String, String> _limits = new LinkedHashMap<String, String>();
+
+    /**
+     * The _catalog.
+     */
+    private UxfEntityCatalog _catalog = new UxfEntityCatalog();
+
+    /**
+     * UxfXmlConfig constructor, with the default limits and an empty catalog.
+     */
+    public UxfXmlConfig() {
+        for (String[] limit : LIMITS) {
+            _limits.put(limit[0], limit[1]);
+        }
+    }
+
+
+    /**
+     * Set a limit.
+     *
+     * @param name_
+     *            the limit, e.g. "maxElementDepth"
+     * @param value_
+     *            the value, 0 for no limit
+     * @throws IllegalArgumentException
+     *             if there is no such limit or the value is negative
+     */
+    public void setLimit(String name_, int value_) {
+        if (!_limits.containsKey(name_)) {
+            throw new IllegalArgumentException("Unknown XML limit " + name_ + ", known limits are " + _limits.keySet());
+        }
+        if (value_ < 0) {
+            throw new IllegalArgumentException("XML limit " + name_ + " must be 0 or more - " + value_);
+        }
+        _limits.put(name_, String.valueOf(value_));
+    }
+
+
+    /**
+     * Set a limit given as "name=value".
+     *
+     * @param spec_
+     *            the limit, e.g. "maxElementDepth=64"
+     * @throws IllegalArgumentException
+     *             if the limit cannot be parsed
+     */
+    public void setLimit(String spec_) {
+        int equals = spec_.indexOf('=');
+        if (equals < 0) {
+            throw new IllegalArgumentException("XML limit must be name=value - " + spec_);
+        }
+        try {
+            setLimit(spec_.substring(0, equals).trim(), Integer.parseInt(spec_.substring(equals + 1).trim()));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("XML limit must be name=value - " + spec_);
+        }
+    }
+
+
+    /**
+     * Gets a limit.
+     *
+     * @param name_
+     *            the limit
+     * @return the value, null if there is no such limit
+     */
+    public String getLimit(String name_) {
+        return _limits.get(name_);
+    }
+
+
+    /**
+     * Gets the entity catalog.
+     *
+     * @return the catalog
+     */
+    public UxfEntityCatalog getCatalog() {
+        return _catalog;
+    }
+
+
+    /**
+     * Sets the entity catalog.
+     *
+     * @param catalog_
+     *            the catalog external references are resolved from
+     */
+    public void setCatalog(UxfEntityCatalog catalog_) {
+        _catalog = catalog_;
+    }
+
+
+    /**
+     * Sets the entity catalog from a file.
+     *
+     * @param catalogFilename_
+     *            the catalog file (see UxfEntityCatalog)
+     * @throws IOException
+     *             if the catalog cannot be read
+     */
+    public void setCatalog(String catalogFilename_) throws IOException {
+        _catalog = new UxfEntityCatalog(catalogFilename_);
+    }
+
+
+    /**
+     * Create a streaming factory with this configuration.
+     *
+     * @return the factory
+     */
+    public XMLInputFactory newInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+
+        // Only the catalog may resolve, anything it lets through is refused
+        factory.setXMLResolver(_catalog);
+        factory.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        for (Map.Entry<String, String> limit : _limits.entrySet()) {
+            factory.setProperty("jdk.xml." + limit.getKey(), limit.getValue());
+        }
+        return factory;
+    }
+
+
+    /**
+     * Create a document-loader with this configuration.
+     *
+     * @return the document-loader
+     * @throws ParserConfigurationException
+     *             if no document-loader can be created
+     */
+    public DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        factory.setXIncludeAware(false);
+        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+        for (Map.Entry<String, String> limit : _limits.entrySet()) {
+            factory.setAttribute("jdk.xml." + limit.getKey(), limit.getValue());
+        }
+        DocumentBuilder loader = factory.newDocumentBuilder();
+        loader.setEntityResolver(_catalog);
+        return loader;
+    }
+
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return _limits + ", " + _catalog;
+    }
+}
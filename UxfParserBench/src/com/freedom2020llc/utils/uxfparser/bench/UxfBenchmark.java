@@ -0,0 +1,373 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser.bench;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import com.freedom2020llc.utils.uxfparser.UxfInput;
+import com.freedom2020llc.utils.uxfparser.UxfJavaClass;
+import com.freedom2020llc.utils.uxfparser.UxfOptions;
+import com.freedom2020llc.utils.uxfparser.UxfOutputWriter;
+import com.freedom2020llc.utils.uxfparser.UxfParser;
+
+/**
+ * UxfBenchmark. Measures throughput and allocation of UxfJavaClass.parse, source
+ * emission (toString), UxfParser.parseImportsList and the whole diagram to files
+ * pipeline, writing into tmpfs (/dev/shm) when there is one. parse.body1k and
+ * parse.body10k parse one method of 1,000 and 10,000 body lines, so their ops/s
+ * show whether method bodies are accumulated in linear time.
+ * Each benchmark runs warm-up iterations, then measured iterations of a fixed
+ * time, and reports operations per second and bytes allocated per operation
+ * (from the thread allocation counter, like JMH's -prof gc).
+ * Generator console output is discarded while measuring.
+ * <pre>
+ * java -cp UxfParser/bin:UxfParserBench/bin com.freedom2020llc.utils.uxfparser.bench.UxfBenchmark [filter regex] [iteration ms]
+ * </pre>
+ *
+ */
+public class UxfBenchmark {
+
+    /**
+     * A benchmarked operation.
+     */
+    public interface Operation {
+
+        /**
+         * Run the operation once.
+         *
+         * @return a result, consumed so the work cannot be optimised away
+         * @throws Exception
+         *             if the operation fails
+         */
+        public Object run() throws Exception;
+    }
+
+    /**
+     * Warm-up iterations.
+     */
+    private static final int WARMUP_ITERATIONS = 3;
+
+    /**
+     * Measured iterations.
+     */
+    private static final int MEASURED_ITERATIONS = 5;
+
+    /**
+     * Results are folded in here so the JIT cannot drop the work.
+     */
+    private static volatile int _sink;
+
+    /**
+     * The _filter of benchmark names.
+     */
+    private final Pattern _filter;
+
+    /**
+     * The _iteration millis.
+     */
+    private final long _iterationMillis;
+
+    /**
+     * The _console, System.out before it was silenced.
+     */
+    private final PrintStream _console;
+
+    /**
+     * UxfBenchmark constructor.
+     *
+     * @param filter_
+     *            regex of benchmark names to run
+     * @param iterationMillis_
+     *            duration of one iteration
+     */
+    public UxfBenchmark(String filter_, long iterationMillis_) {
+        _filter = Pattern.compile(filter_);
+        _iterationMillis = iterationMillis_;
+        _console = System.out;
+    }
+
+
+    /**
+     * Run the benchmarks.
+     *
+     * @param args_
+     *            [filter regex] [iteration ms]
+     * @throws Exception
+     *             if a benchmark fails
+     */
+    public static void main(String[] args_) throws Exception {
+        UxfBenchmark benchmark = new UxfBenchmark(
+                args_.length > 0 ? args_[0] : ".*",
+                args_.length > 1 ? Long.parseLong(args_[1]) : 1000L);
+        // Read diagrams as the command line does
+        UxfInput.setMapping(true);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            benchmark.runAll();
+        } finally {
+            System.setOut(benchmark._console);
+        }
+    }
+
+
+    /**
+     * Run all benchmarks matching the filter.
+     *
+     * @throws Exception
+     *             if a benchmark fails
+     */
+    public void runAll() throws Exception {
+        _console.println(String.format(Locale.ROOT, "%-28s %14s %10s %16s", "Benchmark", "ops/s", "+-", "alloc B/op"));
+
+        final ArrayList<String> imports = UxfParser.parseImportsList("com.bench", ".util;java.util", ";", ".");
+        final String small = panel("Small", 1, 1, 0);
+        final String medium = panel("Medium", 20, 20, 5);
+        final String huge = panel("Huge", 500, 200, 50);
+
+        run("parse.small", new Operation() {
+            public Object run() {
+                return UxfJavaClass.parse("com.bench", small, "out", imports);
+            }
+        });
+        run("parse.medium", new Operation() {
+            public Object run() {
+                return UxfJavaClass.parse("com.bench", medium, "out", imports);
+            }
+        });
+        run("parse.huge", new Operation() {
+            public Object run() {
+                return UxfJavaClass.parse("com.bench", huge, "out", imports);
+            }
+        });
+
+        // One method with a long //JAVADOC ... //END body: 10 times the lines should take 10 times as long
+        final String body1k = panel("Body1k", 0, 1, 1000);
+        final String body10k = panel("Body10k", 0, 1, 10000);
+        run("parse.body1k", new Operation() {
+            public Object run() {
+                return UxfJavaClass.parse("com.bench", body1k, "out", imports);
+            }
+        });
+        run("parse.body10k", new Operation() {
+            public Object run() {
+                return UxfJavaClass.parse("com.bench", body10k, "out", imports);
+            }
+        });
+
+        final UxfJavaClass mediumClass = UxfJavaClass.parse("com.bench", medium, "out", imports);
+        final UxfJavaClass hugeClass = UxfJavaClass.parse("com.bench", huge, "out", imports);
+        run("emit.medium", new Operation() {
+            public Object run() {
+                return mediumClass.toString();
+            }
+        });
+        run("emit.huge", new Operation() {
+            public Object run() {
+                return hugeClass.toString();
+            }
+        });
+
+        run("parseImportsList", new Operation() {
+            public Object run() {
+                return UxfParser.parseImportsList("com.mycom.myapp", ".myutils;.mycode;java.text;java.util;java.io;.model", ";", ".");
+            }
+        });
+
+        // Whole pipeline: 1000 generated classes from a diagram file into tmpfs
+        if (!matches("pipeline.unchanged") && !matches("pipeline.rewrite")) {
+            return;
+        }
+        File dir = Files.createTempDirectory(tmpfs(), "uxfbench").toFile();
+        try {
+            File diagramFile = new File(dir, "bench.uxf");
+            UxfDiagramGenerator generator = new UxfDiagramGenerator(1L);
+            generator.setLimits(20, 20, 5);
+            generator.write(diagramFile, 1000);
+            final String diagram = diagramFile.getPath();
+            final String outputDir = new File(dir, "src").getPath();
+            final UxfOptions options = new UxfOptions(outputDir, "com.bench", imports);
+            final UxfOptions otherImports = new UxfOptions(outputDir, "com.bench",
+                    UxfParser.parseImportsList("com.bench", ".model;java.io", ";", "."));
+            run("pipeline.unchanged", new Operation() {
+                public Object run() throws Exception {
+                    return UxfParser.generate(diagram, options, null, new UxfOutputWriter(), null);
+                }
+            });
+            run("pipeline.rewrite", new Operation() {
+                private int _count = 0;
+                public Object run() throws Exception {
+                    // Alternate the imports, so every file changes on every run
+                    UxfOptions next = ((_count++ & 1) == 0) ? otherImports : options;
+                    return UxfParser.generate(diagram, next, null, new UxfOutputWriter(), null);
+                }
+            });
+        } finally {
+            delete(dir);
+        }
+    }
+
+
+    /**
+     * Run one benchmark, if it matches the filter, and print its result.
+     *
+     * @param name_
+     *            the benchmark name
+     * @param operation_
+     *            the operation
+     * @throws Exception
+     *             if the operation fails
+     */
+    public void run(String name_, Operation operation_) throws Exception {
+        if (!matches(name_)) {
+            return;
+        }
+        for (int x = 0; x < WARMUP_ITERATIONS; x++) {
+            iteration(operation_);
+        }
+        double[] opsPerSecond = new double[MEASURED_ITERATIONS];
+        long operations = 0;
+        long allocated = 0;
+        for (int x = 0; x < MEASURED_ITERATIONS; x++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            long count = iteration(operation_);
+            long nanos = System.nanoTime() - start;
+            allocated += allocatedBytes() - allocatedBefore;
+            operations += count;
+            opsPerSecond[x] = count * 1e9 / nanos;
+        }
+
+        double mean = 0;
+        for (double ops : opsPerSecond) {
+            mean += ops / MEASURED_ITERATIONS;
+        }
+        double variance = 0;
+        for (double ops : opsPerSecond) {
+            variance += (ops - mean) * (ops - mean) / (MEASURED_ITERATIONS - 1);
+        }
+        _console.println(String.format(Locale.ROOT, "%-28s %14.1f %10.1f %16d",
+                name_, mean, Math.sqrt(variance), allocated / Math.max(1, operations)));
+    }
+
+
+    /**
+     * Run an operation repeatedly for one iteration.
+     *
+     * @param operation_
+     *            the operation
+     * @return number of operations run
+     * @throws Exception
+     *             if the operation fails
+     */
+    private long iteration(Operation operation_) throws Exception {
+        long end = System.nanoTime() + _iterationMillis * 1000000L;
+        long count = 0;
+        int sink = 0;
+        do {
+            Object result = operation_.run();
+            sink += (result != null) ? System.identityHashCode(result) : 0;
+            count++;
+        } while (System.nanoTime() < end);
+        _sink += sink;
+        return count;
+    }
+
+
+    /**
+     * Checks if a benchmark name matches the filter.
+     *
+     * @param name_
+     *            the benchmark name
+     * @return true if it should run
+     */
+    private boolean matches(String name_) {
+        return _filter.matcher(name_).find();
+    }
+
+
+    /**
+     * Gets the bytes allocated by the current thread so far.
+     *
+     * @return allocated bytes, or 0 if the JVM does not count them
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+
+    /**
+     * Build the raw text of a panel.
+     *
+     * @param name_
+     *            the class name
+     * @param fields_
+     *            number of fields
+     * @param methods_
+     *            number of methods
+     * @param bodyLines_
+     *            lines in each //JAVADOC ... //END body, 0 for one-line methods
+     * @return the panel text
+     */
+    public static String panel(String name_, int fields_, int methods_, int bodyLines_) {
+        StringBuilder panel = new StringBuilder();
+        panel.append(name_).append("\n::bench.model\n--\n");
+        for (int x = 0; x < fields_; x++) {
+            panel.append("field").append(x).append(":int:").append(x).append('\n');
+        }
+        panel.append("--\n");
+        for (int x = 0; x < methods_; x++) {
+            if (bodyLines_ == 0) {
+                panel.append("{private}get").append(x).append("():int {return ").append(x).append(";}\n");
+            } else {
+                panel.append("{static}run").append(x).append("(int a) //JAVADOC Runs step ").append(x).append('\n');
+                for (int y = 0; y < bodyLines_; y++) {
+                    panel.append("  a = a * 31 + ").append(y).append(";\n");
+                }
+                panel.append("  return; //END\n");
+            }
+        }
+        panel.append("--\nResponsibilities\n-- benchmark panel ").append(name_);
+        return panel.toString();
+    }
+
+
+    /**
+     * Gets a tmpfs directory if there is one, the temp directory otherwise.
+     *
+     * @return the directory
+     */
+    private static Path tmpfs() {
+        File shm = new File("/dev/shm");
+        return (shm.isDirectory() && shm.canWrite() ? shm : new File(System.getProperty("java.io.tmpdir"))).toPath();
+    }
+
+
+    /**
+     * Delete a directory tree.
+     *
+     * @param file_
+     *            the file or directory
+     */
+    private static void delete(File file_) {
+        File[] children = file_.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file_.delete();
+    }
+}
@@ -0,0 +1,260 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * UxfDiagramGenerator. Writes large, valid, synthetic UXF diagrams for scale
+ * and performance testing. The same seed always gives the same diagram.
+ * Panels use everything UxfJavaClass.parse understands: plain and {abstract}
+ * class headers, ::package lines, name:type:init fields, constants, fields ending
+ * in ";", methods with {private}/{protected}/{static}/{abstract} modifiers, one-line
+ * methods, multi-line //JAVADOC ... //END bodies and Responsibilities blocks.
+ * <pre>
+ * java ... UxfDiagramGenerator [uxfFilename] [classes] [seed]
+ * </pre>
+ *
+ */
+public class UxfDiagramGenerator {
+
+    /**
+     * Field types.
+     */
+    private static final String[] TYPES = { "int", "long", "String", "boolean", "double", "List", "Map" };
+
+    /**
+     * Initialisers, by field type.
+     */
+    private static final String[] INITS = { "0", "0L", "\"text\"", "false", "0.5", "new ArrayList()", "new HashMap()" };
+
+    /**
+     * Method modifiers.
+     */
+    private static final String[] MODIFIERS = { "", "", "{private}", "{protected}", "{static}" };
+
+    /**
+     * Number of packages classes are spread over.
+     */
+    private static final int PACKAGES = 50;
+
+    /**
+     * The _random.
+     */
+    private final Random _random;
+
+    /**
+     * The _max fields of a class.
+     */
+    private int _maxFields = 12;
+
+    /**
+     * The _max methods of a class.
+     */
+    private int _maxMethods = 10;
+
+    /**
+     * The _max body lines of a //JAVADOC method.
+     */
+    private int _maxBodyLines = 20;
+
+    /**
+     * UxfDiagramGenerator constructor.
+     *
+     * @param seed_
+     *            the random seed
+     */
+    public UxfDiagramGenerator(long seed_) {
+        _random = new Random(seed_);
+    }
+
+
+    /**
+     * Write a diagram.
+     *
+     * @param args_
+     *            [uxfFilename] [classes] [seed]
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public static void main(String[] args_) throws IOException {
+        if (args_.length < 2) {
+            System.err.println("Usage:    UxfDiagramGenerator [uxfFilename] [classes] [seed]");
+            return;
+        }
+        long seed = args_.length > 2 ? Long.parseLong(args_[2]) : 1L;
+        new UxfDiagramGenerator(seed).write(new File(args_[0]), Integer.parseInt(args_[1]));
+    }
+
+
+    /**
+     * Sets the size limits of generated classes.
+     *
+     * @param maxFields_
+     *            the max fields
+     * @param maxMethods_
+     *            the max methods
+     * @param maxBodyLines_
+     *            the max lines of a //JAVADOC method body
+     */
+    public void setLimits(int maxFields_, int maxMethods_, int maxBodyLines_) {
+        _maxFields = maxFields_;
+        _maxMethods = maxMethods_;
+        _maxBodyLines = maxBodyLines_;
+    }
+
+
+    /**
+     * Write a diagram file.
+     *
+     * @param file_
+     *            the diagram file
+     * @param classes_
+     *            number of classes
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public void write(File file_, int classes_) throws IOException {
+        Writer writer = new BufferedWriter(Files.newBufferedWriter(file_.toPath(), StandardCharsets.UTF_8), 64 * 1024);
+        try {
+            write(writer, classes_);
+        } finally {
+            writer.close();
+        }
+    }
+
+
+    /**
+     * Write a diagram.
+     *
+     * @param writer_
+     *            where the diagram goes
+     * @param classes_
+     *            number of classes
+     * @throws IOException
+     *             if the writer fails
+     */
+    public void write(Writer writer_, int classes_) throws IOException {
+        writer_.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n");
+        writer_.write("<diagram program=\"umlet\" version=\"11.3\">\n  <zoom_level>10</zoom_level>\n");
+        for (int x = 0; x < classes_; x++) {
+            writer_.write("  <element>\n    <type>com.umlet.element.Class</type>\n");
+            writer_.write("    <coordinates><x>" + (x % 100) * 220 + "</x><y>" + (x / 100) * 320
+                    + "</y><w>200</w><h>300</h></coordinates>\n");
+            writer_.write("    <panel_attributes>");
+            escape(writer_, panel(x));
+            writer_.write("</panel_attributes>\n    <additional_attributes/>\n  </element>\n");
+        }
+        writer_.write("</diagram>\n");
+    }
+
+
+    /**
+     * Build the raw text of the next panel.
+     *
+     * @param index_
+     *            the class index, makes the class name unique
+     * @return the panel text
+     */
+    public String panel(int index_) {
+        StringBuilder panel = new StringBuilder(1024);
+        String className = "Generated" + index_;
+        boolean isAbstract = _random.nextInt(10) == 0;
+
+        // Header
+        panel.append(isAbstract ? "{abstract} " : "").append(className).append('\n');
+        panel.append("::model.pkg").append(index_ % PACKAGES).append("\n--\n");
+
+        // Fields
+        int fields = _random.nextInt(_maxFields + 1);
+        for (int x = 0; x < fields; x++) {
+            int type = _random.nextInt(TYPES.length);
+            switch (_random.nextInt(10)) {
+            case 0:
+                panel.append("MAX_").append(x).append(":int:").append(_random.nextInt(1000));
+                break;
+            case 1:
+                panel.append("protected static ").append(TYPES[type]).append(" raw").append(x)
+                     .append(" = ").append(INITS[type]).append(';');
+                break;
+            case 2:
+            case 3:
+                panel.append("value").append(x).append(':').append(TYPES[type]);
+                break;
+            default:
+                panel.append("value").append(x).append(':').append(TYPES[type]).append(':').append(INITS[type]);
+            }
+            panel.append('\n');
+        }
+        panel.append("--\n");
+
+        // Methods
+        int methods = _random.nextInt(_maxMethods + 1);
+        if (isAbstract) {
+            panel.append("{abstract}area():double;\n");
+        }
+        for (int x = 0; x < methods; x++) {
+            String modifier = MODIFIERS[_random.nextInt(MODIFIERS.length)];
+            switch (_random.nextInt(3)) {
+            case 0:
+                panel.append(modifier).append("getValue").append(x).append("():int {return ").append(x).append(";}\n");
+                break;
+            case 1:
+                panel.append(modifier).append("doStep").append(x).append("(int a, String b);\n");
+                break;
+            default:
+                panel.append(modifier).append("run").append(x).append("(int a) //JAVADOC Runs step ").append(x).append('\n');
+                int lines = _random.nextInt(_maxBodyLines + 1);
+                for (int y = 0; y < lines; y++) {
+                    panel.append("        a = a * 31 + ").append(y).append(";\n");
+                }
+                panel.append("        return; //END\n");
+            }
+        }
+
+        // Comments
+        panel.append("--\nResponsibilities\n");
+        int responsibilities = 1 + _random.nextInt(3);
+        for (int x = 0; x < responsibilities; x++) {
+            panel.append("-- responsibility ").append(x).append(" of ").append(className).append('\n');
+        }
+        return panel.toString();
+    }
+
+
+    /**
+     * Write text as XML character data.
+     *
+     * @param writer_
+     *            the writer
+     * @param text_
+     *            the text
+     * @throws IOException
+     *             if the writer fails
+     */
+    private static void escape(Writer writer_, String text_) throws IOException {
+        for (int x = 0; x < text_.length(); x++) {
+            char c = text_.charAt(x);
+            switch (c) {
+            case '&':
+                writer_.write("&amp;");
+                break;
+            case '<':
+                writer_.write("&lt;");
+                break;
+            case '>':
+                writer_.write("&gt;");
+                break;
+            default:
+                writer_.write(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,373 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser.bench;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.freedom2020llc.utils.uxfparser.UxfLog;
+import com.freedom2020llc.utils.uxfparser.UxfOptions;
+import com.freedom2020llc.utils.uxfparser.UxfOutputWriter;
+import com.freedom2020llc.utils.uxfparser.UxfParser;
+import com.freedom2020llc.utils.uxfparser.UxfShard;
+import com.freedom2020llc.utils.uxfparser.UxfTypeIndex;
+
+/**
+ * UxfRegressionCheck. Regression suite for option combinations that once gave
+ * wrong output: each case runs the pipeline on small diagrams in a temporary
+ * directory and compares the files written with those of a plain run, or
+ * checks what a file must contain.
+ * Exits with status 1 if a case fails.
+ * <pre>
+ * java -cp UxfParser/bin:UxfParserBench/bin com.freedom2020llc.utils.uxfparser.bench.UxfRegressionCheck
+ * </pre>
+ *
+ */
+public class UxfRegressionCheck {
+
+    /**
+     * Package prefix of the generated classes.
+     */
+    private static final String PACKAGE_PREFIX = "com.check";
+
+    /**
+     * Imports list of the generated classes.
+     */
+    private static final String IMPORTS_LIST = ".util;java.util";
+
+    /**
+     * The _dir all cases work in.
+     */
+    private final File _dir;
+
+    /**
+     * The _failures, one line each.
+     */
+    private final List<String> _failures = new ArrayList<String>();
+
+    /**
+     * UxfRegressionCheck constructor.
+     *
+     * @param dir_
+     *            the work directory
+     */
+    public UxfRegressionCheck(File dir_) {
+        _dir = dir_;
+    }
+
+
+    /**
+     * Run every case.
+     *
+     * @param args_
+     *            none
+     * @throws Exception
+     *             if a case cannot be run
+     */
+    public static void main(String[] args_) throws Exception {
+        UxfLog.setLevel(UxfLog.Level.OFF);
+        File dir = Files.createTempDirectory("uxfcheck").toFile();
+        UxfRegressionCheck check = new UxfRegressionCheck(dir);
+        try {
+            check.shardSnapshot();
+            check.sameNameDiagrams();
+            check.javaLangNames();
+            check.handWrittenTypes();
+        } finally {
+            delete(dir);
+        }
+        for (String failure : check._failures) {
+            System.out.println("FAILED " + failure);
+        }
+        System.out.println(check._failures.isEmpty() ? "Regression check passed" : "Regression check FAILED");
+        if (!check._failures.isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+
+    /**
+     * A sharded run with --snapshot must not leave a snapshot of its shard
+     * only, which a later full run would replay as the whole diagram.
+     *
+     * @throws Exception
+     *             if the case cannot be run
+     */
+    public void shardSnapshot() throws Exception {
+        File caseDir = new File(_dir, "shardSnapshot");
+        File diagram = new File(caseDir, "shards.uxf");
+        caseDir.mkdirs();
+        new UxfDiagramGenerator(1L).write(diagram, 40);
+        File expected = new File(caseDir, "expected");
+        generate(diagram, options(expected));
+
+        File actual = new File(caseDir, "actual");
+        UxfOptions shardOptions = options(actual);
+        shardOptions.setSnapshot(true);
+        shardOptions.setShard(new UxfShard(1, 2));
+        generate(diagram, shardOptions);
+        delete(actual);
+        UxfOptions fullOptions = options(actual);
+        fullOptions.setSnapshot(true);
+        generate(diagram, fullOptions);
+        compare("shardSnapshot", expected, actual);
+    }
+
+
+    /**
+     * Incremental runs of two diagrams with the same file name, from different
+     * directories into one output dir, must not share a manifest, or each run
+     * deletes the other diagram's files.
+     *
+     * @throws Exception
+     *             if the case cannot be run
+     */
+    public void sameNameDiagrams() throws Exception {
+        File caseDir = new File(_dir, "sameNameDiagrams");
+        File first = new File(new File(caseDir, "a"), "model.uxf");
+        File second = new File(new File(caseDir, "b"), "model.uxf");
+        writeDiagram(first, "Alpha\n::model\n--\nname:String\n--\n");
+        writeDiagram(second, "Beta\n::model\n--\nname:String\n--\n");
+        File expected = new File(caseDir, "expected");
+        generate(first, options(expected));
+        generate(second, options(expected));
+
+        File actual = new File(caseDir, "actual");
+        UxfOptions options = options(actual);
+        options.setIncremental(true);
+        for (int run = 0; run < 2; run++) {
+            generate(first, options);
+            generate(second, options);
+        }
+        compare("sameNameDiagrams", expected, actual);
+    }
+
+
+    /**
+     * With --precise-imports, a diagram class named like a java.lang class
+     * must be imported where it is used from another package, or the java
+     * file compiles against the java.lang class.
+     *
+     * @throws Exception
+     *             if the case cannot be run
+     */
+    public void javaLangNames() throws Exception {
+        File caseDir = new File(_dir, "javaLangNames");
+        File diagram = new File(caseDir, "names.uxf");
+        writeDiagram(diagram, "Record\n::a\n--\nid:int\n--\n", "User\n::b\n--\nrecord:Record\nname:String\n--\n");
+        File outputDir = new File(caseDir, "actual");
+        UxfOptions options = options(outputDir);
+        UxfTypeIndex typeIndex = new UxfTypeIndex();
+        options.setTypeIndex(typeIndex);
+        typeIndex.read(diagram.getPath(), options);
+        generate(diagram, options);
+        expect("javaLangNames", new File(outputDir, "com/check/b/User.java"), "import com.check.a.Record;");
+        expect("javaLangNames", new File(outputDir, "com/check/b/User.java"), "import java.util.*;", false);
+    }
+
+
+    /**
+     * With --precise-imports, a class referencing a name the diagrams do not
+     * declare must keep the imports list wildcards, diagram packages
+     * included: the output dir is the application's source tree, and a
+     * hand-written class may sit in a diagram package.
+     *
+     * @throws Exception
+     *             if the case cannot be run
+     */
+    public void handWrittenTypes() throws Exception {
+        File caseDir = new File(_dir, "handWrittenTypes");
+        File diagram = new File(caseDir, "handwritten.uxf");
+        writeDiagram(diagram, "Collar\n::util\n--\nsize:int\n--\n", "Dog\n::model\n--\ncollar:Collar\nhelper:Helper\n--\n");
+        File outputDir = new File(caseDir, "actual");
+        UxfOptions options = options(outputDir);
+        UxfTypeIndex typeIndex = new UxfTypeIndex();
+        options.setTypeIndex(typeIndex);
+        typeIndex.read(diagram.getPath(), options);
+        generate(diagram, options);
+        expect("handWrittenTypes", new File(outputDir, "com/check/model/Dog.java"), "import com.check.util.*;");
+        expect("handWrittenTypes", new File(outputDir, "com/check/model/Dog.java"), "import java.util.*;");
+    }
+
+
+    /**
+     * Write a diagram of some panels.
+     *
+     * @param file_
+     *            the diagram file, its directory is created
+     * @param panels_
+     *            the raw text of each panel
+     * @throws Exception
+     *             if the diagram cannot be written
+     */
+    private static void writeDiagram(File file_, String... panels_) throws Exception {
+        StringBuilder diagram = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n");
+        diagram.append("<diagram program=\"umlet\" version=\"11.3\">\n  <zoom_level>10</zoom_level>\n");
+        for (String panel : panels_) {
+            diagram.append("  <element>\n    <type>com.umlet.element.Class</type>\n");
+            diagram.append("    <coordinates><x>0</x><y>0</y><w>200</w><h>300</h></coordinates>\n");
+            diagram.append("    <panel_attributes>").append(panel.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;"));
+            diagram.append("</panel_attributes>\n    <additional_attributes/>\n  </element>\n");
+        }
+        diagram.append("</diagram>\n");
+        file_.getParentFile().mkdirs();
+        Files.writeString(file_.toPath(), diagram);
+    }
+
+
+    /**
+     * Create the options of a case.
+     *
+     * @param outputDir_
+     *            the output dir
+     * @return the options
+     */
+    private static UxfOptions options(File outputDir_) {
+        return new UxfOptions(outputDir_.getPath(), PACKAGE_PREFIX,
+                UxfParser.parseImportsList(PACKAGE_PREFIX, IMPORTS_LIST, ";", "."));
+    }
+
+
+    /**
+     * Generate a diagram.
+     *
+     * @param diagram_
+     *            the diagram
+     * @param options_
+     *            the options
+     * @throws Exception
+     *             if the diagram cannot be generated
+     */
+    private static void generate(File diagram_, UxfOptions options_) throws Exception {
+        UxfOutputWriter writer = UxfOutputWriter.create(options_);
+        try {
+            UxfParser.generate(diagram_.getPath(), options_, null, writer, null);
+        } finally {
+            writer.close();
+        }
+    }
+
+
+    /**
+     * Compare the java files of two output directories, recording a failure
+     * for each file missing, extra or different.
+     *
+     * @param case_
+     *            the case name
+     * @param expected_
+     *            the expected output dir
+     * @param actual_
+     *            the actual output dir
+     * @throws Exception
+     *             if a file cannot be read
+     */
+    private void compare(String case_, File expected_, File actual_) throws Exception {
+        List<String> expected = javaFiles(expected_, "");
+        List<String> actual = javaFiles(actual_, "");
+        for (String path : expected) {
+            if (!actual.contains(path)) {
+                _failures.add(case_ + ": missing " + path);
+            } else if (!Files.readString(new File(expected_, path).toPath())
+                    .equals(Files.readString(new File(actual_, path).toPath()))) {
+                _failures.add(case_ + ": differs " + path);
+            }
+        }
+        for (String path : actual) {
+            if (!expected.contains(path)) {
+                _failures.add(case_ + ": extra " + path);
+            }
+        }
+        if (expected.isEmpty()) {
+            _failures.add(case_ + ": nothing generated");
+        }
+    }
+
+
+    /**
+     * Check that a file contains a line, recording a failure if not.
+     *
+     * @param case_
+     *            the case name
+     * @param file_
+     *            the file
+     * @param line_
+     *            the line, without line end
+     * @throws Exception
+     *             if the file cannot be read
+     */
+    private void expect(String case_, File file_, String line_) throws Exception {
+        expect(case_, file_, line_, true);
+    }
+
+
+    /**
+     * Check that a file contains a line or not, recording a failure if it is wrong.
+     *
+     * @param case_
+     *            the case name
+     * @param file_
+     *            the file
+     * @param line_
+     *            the line, without line end
+     * @param present_
+     *            true if the line must be there, false if it must not
+     * @throws Exception
+     *             if the file cannot be read
+     */
+    private void expect(String case_, File file_, String line_, boolean present_) throws Exception {
+        if (!file_.isFile()) {
+            _failures.add(case_ + ": missing " + file_.getName());
+            return;
+        }
+        boolean found = Files.readAllLines(file_.toPath()).contains(line_);
+        if (found != present_) {
+            _failures.add(case_ + ": " + file_.getName() + (present_ ? " lacks " : " has ") + line_);
+        }
+    }
+
+
+    /**
+     * List the java files below a directory.
+     *
+     * @param dir_
+     *            the directory
+     * @param path_
+     *            the path of dir_ below the top directory, "" for the top
+     * @return the relative paths
+     */
+    private static List<String> javaFiles(File dir_, String path_) {
+        List<String> files = new ArrayList<String>();
+        File[] children = dir_.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                String path = path_ + child.getName();
+                if (child.isDirectory()) {
+                    files.addAll(javaFiles(child, path + "/"));
+                } else if (path.endsWith(".java")) {
+                    files.add(path);
+                }
+            }
+        }
+        return files;
+    }
+
+
+    /**
+     * Delete a directory tree.
+     *
+     * @param file_
+     *            the file or directory
+     */
+    private static void delete(File file_) {
+        File[] children = file_.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file_.delete();
+    }
+}
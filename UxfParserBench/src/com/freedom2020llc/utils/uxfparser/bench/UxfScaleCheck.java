@@ -0,0 +1,245 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser.bench;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.freedom2020llc.utils.uxfparser.UxfOptions;
+import com.freedom2020llc.utils.uxfparser.UxfOutputWriter;
+import com.freedom2020llc.utils.uxfparser.UxfParser;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * UxfScaleCheck. Scale regression suite: generates synthetic diagrams of
+ * increasing size (see UxfDiagramGenerator), runs the whole pipeline on each and
+ * checks that wall time and peak live heap grow no faster than linearly with the
+ * number of classes. Peak live heap is the largest heap in use just after a
+ * garbage collection during the run, so it measures what the parser retains,
+ * not how lazily the collector runs.
+ * Exits with status 1 if, from one size to the next, the cost per class grows
+ * by more than the tolerance factor.
+ * <pre>
+ * java -cp UxfParser/bin:UxfParserBench/bin com.freedom2020llc.utils.uxfparser.bench.UxfScaleCheck [sizes, e.g. 1000,10000,100000] [tolerance] [seed]
+ * </pre>
+ *
+ */
+public class UxfScaleCheck {
+
+    /**
+     * Default diagram sizes, in classes.
+     */
+    private static final String DEFAULT_SIZES = "10,1000,10000,100000";
+
+    /**
+     * Default allowed growth of cost per class.
+     */
+    private static final double DEFAULT_TOLERANCE = 3.0;
+
+    /**
+     * Heap below this is not compared: the JVM's own live set dominates it.
+     */
+    private static final long HEAP_FLOOR = 32L * 1024 * 1024;
+
+    /**
+     * Time below this is not compared: timer and warm-up noise dominate it.
+     */
+    private static final long TIME_FLOOR = 200L * 1000000L;
+
+    /**
+     * Peak live heap seen since the last reset.
+     */
+    private static volatile long _peakLive;
+
+    /**
+     * Check scaling.
+     *
+     * @param args_
+     *            [sizes] [tolerance] [seed]
+     * @throws Exception
+     *             if a diagram cannot be generated or parsed
+     */
+    public static void main(String[] args_) throws Exception {
+        String[] sizes = (args_.length > 0 ? args_[0] : DEFAULT_SIZES).split(",");
+        double tolerance = args_.length > 1 ? Double.parseDouble(args_[1]) : DEFAULT_TOLERANCE;
+        long seed = args_.length > 2 ? Long.parseLong(args_[2]) : 1L;
+
+        listen();
+        PrintStream console = System.out;
+        File dir = Files.createTempDirectory("uxfscale").toFile();
+        int[] classes = new int[sizes.length];
+        long[] nanos = new long[sizes.length];
+        long[] heap = new long[sizes.length];
+        try {
+            // Warm up, so the first size does not pay for class loading and JIT
+            run(dir, 1000, seed, console);
+
+            console.println(String.format(Locale.ROOT, "%10s %12s %14s %14s %14s",
+                    "classes", "wall ms", "us/class", "peak live MB", "bytes/class"));
+            for (int x = 0; x < sizes.length; x++) {
+                classes[x] = Integer.parseInt(sizes[x].trim());
+                long[] result = run(dir, classes[x], seed, console);
+                nanos[x] = result[0];
+                heap[x] = result[1];
+                console.println(String.format(Locale.ROOT, "%10d %12d %14.1f %14.1f %14d",
+                        classes[x], nanos[x] / 1000000L, nanos[x] / 1000.0 / classes[x],
+                        heap[x] / (1024.0 * 1024.0), heap[x] / classes[x]));
+            }
+        } finally {
+            delete(dir);
+        }
+
+        boolean ok = check(console, "wall time", classes, nanos, TIME_FLOOR, tolerance)
+                & check(console, "peak live heap", classes, heap, HEAP_FLOOR, tolerance);
+        console.println(ok ? "Scale check passed" : "Scale check FAILED");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+
+    /**
+     * Generate and parse one diagram.
+     *
+     * @param dir_
+     *            the work directory
+     * @param classes_
+     *            number of classes
+     * @param seed_
+     *            the generator seed
+     * @param console_
+     *            the real System.out
+     * @return wall nanos and peak live heap bytes
+     * @throws Exception
+     *             if the diagram cannot be generated or parsed
+     */
+    private static long[] run(File dir_, int classes_, long seed_, PrintStream console_) throws Exception {
+        File diagram = new File(dir_, "scale" + classes_ + ".uxf");
+        File outputDir = new File(dir_, "src" + classes_);
+        new UxfDiagramGenerator(seed_).write(diagram, classes_);
+        UxfOptions options = new UxfOptions(outputDir.getPath(), "com.scale",
+                UxfParser.parseImportsList("com.scale", ".util;java.util", ";", "."));
+
+        collect();
+        _peakLive = 0;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long start = System.nanoTime();
+        try {
+            UxfParser.generate(diagram.getPath(), options, null, new UxfOutputWriter(), null);
+        } finally {
+            System.setOut(console_);
+        }
+        long nanos = System.nanoTime() - start;
+        // Whatever is still reachable at the end counts too
+        collect();
+        long heap = _peakLive;
+
+        delete(outputDir);
+        diagram.delete();
+        return new long[] { nanos, heap };
+    }
+
+
+    /**
+     * Check that a cost grows no faster than linearly, within a tolerance, from
+     * each size to the next.
+     *
+     * @param console_
+     *            where to report
+     * @param name_
+     *            the cost name
+     * @param classes_
+     *            the sizes
+     * @param costs_
+     *            the cost of each size
+     * @param floor_
+     *            smaller costs are raised to this before scaling, noise dominates them
+     * @param tolerance_
+     *            allowed growth of cost per class
+     * @return true if the check passes
+     */
+    private static boolean check(PrintStream console_, String name_, int[] classes_, long[] costs_,
+            long floor_, double tolerance_) {
+        boolean ok = true;
+        for (int x = 1; x < classes_.length; x++) {
+            double scale = classes_[x] / (double) classes_[x - 1];
+            double growth = costs_[x] / (Math.max(costs_[x - 1], floor_) * scale);
+            boolean passed = growth <= tolerance_;
+            console_.println(String.format(Locale.ROOT, "%-16s %8d -> %-8d per class x%.2f (limit x%.1f) %s",
+                    name_, classes_[x - 1], classes_[x], growth, tolerance_, passed ? "ok" : "FAILED"));
+            ok &= passed;
+        }
+        return ok;
+    }
+
+
+    /**
+     * Run a full collection and give its notification time to arrive.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    private static void collect() throws InterruptedException {
+        System.gc();
+        Thread.sleep(100);
+    }
+
+
+    /**
+     * Listen to garbage collections and keep the peak heap in use after each.
+     */
+    private static void listen() {
+        NotificationListener listener = new NotificationListener() {
+            public void handleNotification(Notification notification_, Object handback_) {
+                if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification_.getType())) {
+                    return;
+                }
+                GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo
+                        .from((CompositeData) notification_.getUserData());
+                long used = 0;
+                for (Map.Entry<String, MemoryUsage> pool : info.getGcInfo().getMemoryUsageAfterGc().entrySet()) {
+                    used += pool.getValue().getUsed();
+                }
+                if (used > _peakLive) {
+                    _peakLive = used;
+                }
+            }
+        };
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter) {
+                ((NotificationEmitter) collector).addNotificationListener(listener, null, null);
+            }
+        }
+    }
+
+
+    /**
+     * Delete a directory tree.
+     *
+     * @param file_
+     *            the file or directory
+     */
+    private static void delete(File file_) {
+        File[] children = file_.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file_.delete();
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser.bench;
+
+import java.util.ArrayList;
+
+import com.freedom2020llc.utils.uxfparser.UxfJavaClass;
+
+/**
+ * UxfSplitParse. The reference parse: a frozen copy of UxfJavaClass.parse as it
+ * was before UxfPanelTokenizer, built on String.split(), with only the debug
+ * prints taken out. UxfTokenizerCheck compares the two. Do not change it to
+ * follow UxfJavaClass.parse; a deliberate change of parse output is a change
+ * of this class too, made on its own and said so.
+ *
+ */
+public class UxfSplitParse {
+
+    /**
+     * Indentation of the generated members.
+     */
+    private static final String SPACER = "    ";
+
+    /**
+     * No instances.
+     */
+    private UxfSplitParse() {
+    }
+
+
+    /**
+     * Parse raw text from uxf panel_attributes element, the split() way.
+     *
+     * @param packagePrefix_
+     *            the package prefix
+     * @param rawtext_
+     *            the raw panel text
+     * @param destinationdir_
+     *            the destination dir
+     * @param importsList_
+     *            import package names
+     * @return new UxfJavaClass, or null if rawtext_ is null
+     * @throws RuntimeException
+     *             on the panels the split() parse could not handle, e.g. a header without a ::package line
+     */
+    public static UxfJavaClass parse(String packagePrefix_, String rawtext_, String destinationdir_, ArrayList<String> importsList_) {
+        if (rawtext_ == null) {
+            return null;
+        }
+        UxfJavaClass uxf = new UxfJavaClass(packagePrefix_, destinationdir_);
+        if (importsList_ != null) {
+            uxf.setImportPackages(importsList_);
+        }
+
+        // Split on "--" to get all sections
+        String[] sections = rawtext_.split("--");
+
+        // Get class name and package
+        if (sections.length > 1) {
+            String className = "CLASSNAME_NOT_FOUND";
+            String classDefinition = "CLASSNAME_DEFINITION_NOT_FOUND";
+            String packageName = "PACKAGENAME_NOT_FOUND";
+            String[] lines = sections[0].split("\n");
+            if (lines.length > 0) {
+                String[] tmp = lines[0].trim().split(" ");
+                classDefinition = lines[0].trim();
+                classDefinition = classDefinition.replace("{abstract}", "abstract class");
+                classDefinition = classDefinition.replace("//", "");
+                if (classDefinition.contains("abstract")) {
+                    className = tmp[1].trim();
+                } else {
+                    classDefinition = "class " + classDefinition;
+                    className = tmp[0].trim();
+                }
+            }
+            String[] line = lines[1].split("::");
+            if (line.length > 1) {
+                packageName = line[1].trim().toLowerCase();
+            }
+            uxf.setClassName(className);
+            uxf.setClassDefinition(classDefinition);
+            uxf.setPackageName(packageName);
+        }
+
+        // Fields
+        if (sections.length > 2) {
+            String[] fields = sections[1].split("\n");
+            for (int x = 0; x < fields.length; x++) {
+                String fieldtext = fields[x].trim();
+                if (fieldtext.endsWith(";")) {
+                    uxf.addField(fieldtext);
+                } else {
+                    String[] tokens = fieldtext.split(":");
+                    if (tokens.length >= 2) {
+                        String modifier = "protected";
+                        String variableName = tokens[0].trim();
+                        String dataType = tokens[1].trim();
+                        String initialisation = (tokens.length > 2) ? tokens[2].trim() : "";
+                        boolean constant = false;
+                        if (variableName.equals(variableName.toUpperCase())) {
+                            modifier = "public static final";
+                            constant = true;
+                        }
+                        String field = modifier + " " + dataType + " " + (!constant ? "_" : "") + variableName
+                                + (("".equals(initialisation)) ? ";" : " = " + initialisation + ";");
+                        uxf.addField(field);
+                    }
+                }
+            }
+        }
+
+        // Methods
+        if (sections.length > 3) {
+            String[] methods = sections[2].split("\n");
+            boolean insidemethod = false;
+            String method = "METHOD_NOT_FOUND";
+            String modifier = "public";
+            String methodname = "METHOD NAME NOT FOUND";
+            String autocomment = "";
+            for (int x = 0; x < methods.length; x++) {
+                if (methods[x].trim().length() == 0) {
+                    continue;
+                }
+                modifier = "public ";
+                if (methods[x].trim().contains("{private}")) {
+                    methods[x] = methods[x].replace("{private}", "");
+                    modifier = "private ";
+                }
+                if (methods[x].trim().contains("{protected}")) {
+                    methods[x] = methods[x].replace("{protected}", "");
+                    modifier = "protected ";
+                }
+                if (methods[x].trim().contains("{abstract}")) {
+                    methods[x] = methods[x].replace("{abstract}", "");
+                    modifier = "public abstract ";
+                }
+                if (methods[x].trim().contains("{static}")) {
+                    methods[x] = methods[x].replace("{static}", "");
+                    modifier = "public static ";
+                }
+                if (!insidemethod) {
+                    methodname = methods[x].substring(0, methods[x].indexOf('('));
+                    if (methodname.lastIndexOf(' ') > 0) {
+                        methodname = methodname.substring(methodname.lastIndexOf(' '));
+                        autocomment = methodname;
+                    } else {
+                        autocomment = "Constructor: " + methodname;
+                    }
+                }
+                if ((methods[x].contains("{") && methods[x].contains("}"))
+                        && (methods[x].indexOf("{") < methods[x].indexOf("}"))) {
+                    // One line method
+                    method = "\n" + SPACER + "/**\n" + SPACER + " * " + autocomment + "\n" + SPACER + " */\n";
+                    method += SPACER + modifier + methods[x];
+                    uxf.addMethod(method);
+                    insidemethod = false;
+                } else {
+                    if (methods[x].contains("//JAVADOC")) {
+                        String[] line = methods[x].split("//JAVADOC");
+                        method = "\n" + SPACER + "/**\n" + SPACER + " * " + (line.length > 1 ? line[1] : autocomment) + "\n" + SPACER + " */\n";
+                        method += SPACER + modifier + line[0].trim();
+                        insidemethod = true;
+                        continue;
+                    }
+                    if (insidemethod) {
+                        method += "\n" + SPACER + methods[x];
+                        if (methods[x].contains("//END")) {
+                            method = method.replace("//END", "");
+                            uxf.addMethod(method);
+                            method = "METHOD_NOT_FOUND";
+                            insidemethod = false;
+                        }
+                    } else {
+                        method = "\n" + SPACER + "/**\n" + SPACER + " * " + autocomment + "\n" + SPACER + " */\n";
+                        method += SPACER + modifier + methods[x];
+                        uxf.addMethod(method);
+                    }
+                }
+            }
+        }
+
+        // Split on "Responsibilities" to get comments section
+        sections = rawtext_.split("Responsibilities");
+        if (sections.length > 1) {
+            String comments = sections[1];
+            comments = comments.replaceAll("--", "+");
+            String[] commentlines = comments.split("\n");
+            StringBuffer formattedcomments = new StringBuffer();
+            for (int x = 0; x < commentlines.length; x++) {
+                if (!commentlines[x].isEmpty()) {
+                    formattedcomments.append(" * ");
+                    formattedcomments.append(commentlines[x]);
+                    formattedcomments.append("\n");
+                }
+            }
+            uxf.setComments(formattedcomments.toString());
+        }
+        return uxf;
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser.bench;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+import com.freedom2020llc.utils.uxfparser.UxfPanelHandler;
+import com.freedom2020llc.utils.uxfparser.UxfPanelHeader;
+import com.freedom2020llc.utils.uxfparser.UxfPanelReader;
+
+/**
+ * UxfStartupBench. Startup benchmark of the packaged command line tool (see
+ * dist/build.sh): runs dist/uxfparser.jar in a new JVM on one diagram, again
+ * and again, and reports the median time from starting the JVM to the first
+ * generated file, and to the end of the run. Each run is done without class
+ * data sharing, with the JDK's own archive, with the AppCDS archive
+ * dist/uxfparser.jsa when there is one, and with the options of the
+ * dist/uxfparser launcher (the archive and C1 only, which suits short runs).
+ * Runs use the JDK running the benchmark, which must be the one the archive
+ * was built with.
+ * <pre>
+ * java -cp UxfParser/bin:UxfParserBench/bin com.freedom2020llc.utils.uxfparser.bench.UxfStartupBench [dist dir] [runs] [uxfFilename]
+ * </pre>
+ *
+ */
+public class UxfStartupBench {
+
+    /**
+     * Package prefix of the generated classes.
+     */
+    private static final String PACKAGE_PREFIX = "com.example";
+
+    /**
+     * Imports list of the generated classes.
+     */
+    private static final String IMPORTS_LIST = "java.util";
+
+    /**
+     * How often to look for the first file, in nanoseconds.
+     */
+    private static final long POLL_NANOS = 100000L;
+
+    /**
+     * The _java executable.
+     */
+    private final String _java;
+
+    /**
+     * The _jar.
+     */
+    private final File _jar;
+
+    /**
+     * The _diagram.
+     */
+    private final File _diagram;
+
+    /**
+     * The _output dir, emptied before every run.
+     */
+    private final File _outputDir;
+
+    /**
+     * The _first file the diagram generates.
+     */
+    private final File _firstFile;
+
+    /**
+     * UxfStartupBench constructor.
+     *
+     * @param jar_
+     *            the runnable jar
+     * @param diagram_
+     *            the diagram generated by each run
+     * @param outputDir_
+     *            the output dir
+     * @throws Exception
+     *             if the diagram cannot be read
+     */
+    public UxfStartupBench(File jar_, File diagram_, File outputDir_) throws Exception {
+        _java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        _jar = jar_;
+        _diagram = diagram_;
+        _outputDir = outputDir_;
+
+        // The first panel with a class header gives the first file
+        final UxfPanelHeader[] first = new UxfPanelHeader[1];
+        UxfPanelReader.read(diagram_.getPath(), new UxfPanelHandler() {
+            public void panel(String rawtext_) {
+                if (first[0] == null) {
+                    first[0] = UxfPanelHeader.scan(rawtext_);
+                }
+            }
+        });
+        if (first[0] == null) {
+            throw new IllegalArgumentException("No class in " + diagram_);
+        }
+        String packageName = first[0].getPackageName(PACKAGE_PREFIX);
+        _firstFile = new File(new File(outputDir_, packageName.replace('.', File.separatorChar)), first[0].getClassName() + ".java");
+    }
+
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args_
+     *            [dist dir] [runs] [uxfFilename]
+     * @throws Exception
+     *             if the diagram cannot be read or a run fails
+     */
+    public static void main(String[] args_) throws Exception {
+        File dist = new File(args_.length > 0 ? args_[0] : "dist");
+        int runs = args_.length > 1 ? Integer.parseInt(args_[1]) : 20;
+        File diagram = new File(args_.length > 2 ? args_[2] : new File(new File(dist, "sample"), "library.uxf").getPath());
+        File jar = new File(dist, "uxfparser.jar");
+        File archive = new File(dist, "uxfparser.jsa");
+        if (!jar.isFile()) {
+            System.err.println("No " + jar + " - run dist/build.sh first");
+            System.exit(1);
+        }
+        File outputDir = Files.createTempDirectory("uxfstartup").toFile();
+        UxfStartupBench bench = new UxfStartupBench(jar, diagram, outputDir);
+
+        System.out.println("Startup of " + jar + " on " + diagram + ", median of " + runs + " runs (" + System.getProperty("java.version") + ")");
+        System.out.println(String.format(Locale.ROOT, "%-12s %14s %14s", "sharing", "first file ms", "total ms"));
+        bench.report("off", runs, "-Xshare:off");
+        bench.report("JDK archive", runs, "-Xshare:auto");
+        if (archive.isFile()) {
+            bench.report("AppCDS", runs, "-XX:SharedArchiveFile=" + archive.getPath(), "-Xshare:auto", "-Xlog:cds=off", "-Xlog:cds+dynamic=off");
+            bench.report("launcher", runs, "-XX:SharedArchiveFile=" + archive.getPath(), "-Xshare:auto", "-Xlog:cds=off", "-Xlog:cds+dynamic=off",
+                    "-XX:TieredStopAtLevel=1");
+        } else {
+            System.out.println("No " + archive + " - AppCDS not measured");
+        }
+        delete(outputDir);
+    }
+
+
+    /**
+     * Run one mode and print its medians.
+     *
+     * @param name_
+     *            the mode name
+     * @param runs_
+     *            the number of runs
+     * @param jvmOptions_
+     *            the JVM options of the mode
+     * @throws Exception
+     *             if a run fails
+     */
+    private void report(String name_, int runs_, String... jvmOptions_) throws Exception {
+        long[] first = new long[runs_];
+        long[] total = new long[runs_];
+
+        // One run to warm the file cache, not counted
+        run(jvmOptions_, new long[2]);
+        for (int x = 0; x < runs_; x++) {
+            long[] times = new long[2];
+            run(jvmOptions_, times);
+            first[x] = times[0];
+            total[x] = times[1];
+        }
+        System.out.println(String.format(Locale.ROOT, "%-12s %14.1f %14.1f", name_, median(first) / 1e6, median(total) / 1e6));
+    }
+
+
+    /**
+     * Run the tool once.
+     *
+     * @param jvmOptions_
+     *            the JVM options
+     * @param times_
+     *            set to the nanoseconds to the first file and to the end
+     * @throws Exception
+     *             if the run fails or writes no file
+     */
+    private void run(String[] jvmOptions_, long[] times_) throws Exception {
+        delete(_outputDir);
+        List<String> command = new ArrayList<String>();
+        command.add(_java);
+        command.addAll(Arrays.asList(jvmOptions_));
+        command.add("-jar");
+        command.add(_jar.getPath());
+        command.add("--log-level");
+        command.add("off");
+        command.add(_diagram.getPath());
+        command.add(_outputDir.getPath());
+        command.add(PACKAGE_PREFIX);
+        command.add(IMPORTS_LIST);
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+        long first = 0;
+        while (first == 0 && process.isAlive()) {
+            if (_firstFile.isFile()) {
+                first = System.nanoTime() - start;
+            } else {
+                LockSupport.parkNanos(POLL_NANOS);
+            }
+        }
+        int status = process.waitFor();
+        long total = System.nanoTime() - start;
+        if (first == 0 && _firstFile.isFile()) {
+            // Written in the last poll interval
+            first = total;
+        }
+        if (status != 0 || first == 0) {
+            throw new IllegalStateException("Run failed with status " + status + ": " + command);
+        }
+        times_[0] = first;
+        times_[1] = total;
+    }
+
+
+    /**
+     * Median of some times.
+     *
+     * @param times_
+     *            the times, sorted by this call
+     * @return the median
+     */
+    private static long median(long[] times_) {
+        Arrays.sort(times_);
+        return times_[times_.length / 2];
+    }
+
+
+    /**
+     * Delete a file or directory tree.
+     *
+     * @param file_
+     *            the file
+     */
+    private static void delete(File file_) {
+        File[] children = file_.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file_.delete();
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ *
+ */
+package com.freedom2020llc.utils.uxfparser.bench;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.freedom2020llc.utils.uxfparser.UxfJavaClass;
+import com.freedom2020llc.utils.uxfparser.UxfLog;
+import com.freedom2020llc.utils.uxfparser.UxfParser;
+
+/**
+ * UxfTokenizerCheck. Differential check of the single pass panel parse
+ * (UxfJavaClass.parse over UxfPanelTokenizer) against the split() parse it
+ * replaced (see UxfSplitParse): both parse the same panels and must give the
+ * same class, compared field by field and as emitted source. Panels come from
+ * UxfDiagramGenerator and from a fuzzer that strings together the markers the
+ * parse looks for ("--", "::", ":", "//JAVADOC", "//END", "Responsibilities",
+ * modifiers, braces...). Panels the split() parse throws on are counted, not
+ * compared: the tokenizer gives empty names for those instead.
+ * Exits with status 1 if a panel differs.
+ * <pre>
+ * java -cp UxfParser/bin:UxfParserBench/bin com.freedom2020llc.utils.uxfparser.bench.UxfTokenizerCheck [panels, default 200000] [seed, default 1]
+ * </pre>
+ *
+ */
+public class UxfTokenizerCheck {
+
+    /**
+     * Package prefix of the parsed classes.
+     */
+    private static final String PACKAGE_PREFIX = "com.check";
+
+    /**
+     * Differences printed before the rest are only counted.
+     */
+    private static final int MAX_REPORTED = 10;
+
+    /**
+     * What fuzzed panels are made of.
+     */
+    private static final String[] FRAGMENTS = {
+        "--", "--", "\n", "\n", "\n", "::", "::model", ":", ":", ";", " ", " ", "  ", "\t", "\r",
+        "Name", "{abstract}", "{abstract} Name", "//", "abstract", "class", "interface Named",
+        "count", "COUNT", "int", "String", "new HashMap()", "0",
+        "(", ")", "{", "}", "{private}", "{protected}", "{static}", "run()", "void run()",
+        "int size() { return 0; }", "//JAVADOC", "//JAVADOC Does it", "//END", "return;",
+        "Responsibilities", "-- note", "-", "\u00e9",
+    };
+
+    /**
+     * The _imports list of the parsed classes.
+     */
+    private final ArrayList<String> _importsList;
+
+    /**
+     * The _compared panels.
+     */
+    private int _compared = 0;
+
+    /**
+     * The _reference failures: panels the split() parse throws on.
+     */
+    private int _referenceFailures = 0;
+
+    /**
+     * The _differences.
+     */
+    private int _differences = 0;
+
+    /**
+     * UxfTokenizerCheck constructor.
+     */
+    public UxfTokenizerCheck() {
+        _importsList = UxfParser.parseImportsList(PACKAGE_PREFIX, ".util;java.util", ";", ".");
+    }
+
+
+    /**
+     * Run the check.
+     *
+     * @param args_
+     *            [panels] [seed]
+     */
+    public static void main(String[] args_) {
+        int panels = args_.length > 0 ? Integer.parseInt(args_[0]) : 200000;
+        long seed = args_.length > 1 ? Long.parseLong(args_[1]) : 1L;
+        UxfLog.setLevel(UxfLog.Level.OFF);
+
+        UxfTokenizerCheck check = new UxfTokenizerCheck();
+        UxfDiagramGenerator generator = new UxfDiagramGenerator(seed);
+        Random random = new Random(seed);
+        for (int x = 0; x < panels; x++) {
+            check.compare((x % 4 == 0) ? generator.panel(x) : fuzz(random));
+        }
+        System.out.println("Tokenizer check: " + check._compared + " panels compared, " + check._referenceFailures
+                + " skipped (split() parse throws), " + check._differences + " differences");
+        System.out.println(check._differences == 0 ? "Tokenizer check passed" : "Tokenizer check FAILED");
+        if (check._differences > 0) {
+            System.exit(1);
+        }
+    }
+
+
+    /**
+     * Build a random panel from the fragments, mostly shaped like a class: a
+     * header of a name line and a package line, then sections separated by
+     * "--", method lines mostly with a "(" as the split() parse needs.
+     *
+     * @param random_
+     *            the random source
+     * @return the panel text
+     */
+    static String fuzz(Random random_) {
+        StringBuilder panel = new StringBuilder(256);
+        int sections = random_.nextInt(6);
+        for (int section = 0; section <= sections; section++) {
+            if (section > 0) {
+                panel.append(random_.nextInt(8) == 0 ? "----" : "--");
+                panel.append(random_.nextInt(4) == 0 ? "" : "\n");
+            }
+            int lines = (section == 0 && random_.nextInt(8) != 0) ? 2 : random_.nextInt(5);
+            for (int line = 0; line < lines; line++) {
+                if (section == 0 && line == 1 && random_.nextInt(4) != 0) {
+                    panel.append("::");
+                }
+                int parts = 1 + random_.nextInt(5);
+                for (int part = 0; part < parts; part++) {
+                    panel.append(FRAGMENTS[random_.nextInt(FRAGMENTS.length)]);
+                    if (section == 2 && part == 0 && random_.nextInt(8) != 0) {
+                        panel.append('(');
+                    }
+                }
+                panel.append('\n');
+            }
+        }
+        return panel.toString();
+    }
+
+
+    /**
+     * Parse a panel both ways and record a difference.
+     *
+     * @param rawtext_
+     *            the panel text
+     */
+    void compare(String rawtext_) {
+        UxfJavaClass expected;
+        try {
+            expected = UxfSplitParse.parse(PACKAGE_PREFIX, rawtext_, "out", _importsList);
+        } catch (RuntimeException ex) {
+            _referenceFailures++;
+            return;
+        }
+        _compared++;
+        UxfJavaClass actual = UxfJavaClass.parse(PACKAGE_PREFIX, rawtext_, "out", _importsList);
+        String difference = difference(expected, actual);
+        if (difference != null) {
+            _differences++;
+            if (_differences <= MAX_REPORTED) {
+                System.out.println("Difference in " + difference + " for panel \"" + escape(rawtext_) + "\"");
+            }
+        }
+    }
+
+
+    /**
+     * Compare two classes.
+     *
+     * @param expected_
+     *            from the split() parse
+     * @param actual_
+     *            from the tokenizer
+     * @return what differs, or null if nothing does
+     */
+    private static String difference(UxfJavaClass expected_, UxfJavaClass actual_) {
+        if (!expected_.getClassName().equals(actual_.getClassName())) {
+            return "class name: \"" + escape(expected_.getClassName()) + "\" / \"" + escape(actual_.getClassName()) + "\"";
+        }
+        if (!String.valueOf(expected_.getClassDefinition()).equals(String.valueOf(actual_.getClassDefinition()))) {
+            return "class definition: \"" + escape(expected_.getClassDefinition()) + "\" / \"" + escape(actual_.getClassDefinition()) + "\"";
+        }
+        if (!expected_.getPackageName().equals(actual_.getPackageName())) {
+            return "package: \"" + escape(expected_.getPackageName()) + "\" / \"" + escape(actual_.getPackageName()) + "\"";
+        }
+        if (!expected_.getFields().equals(actual_.getFields())) {
+            return "fields: " + escape(expected_.getFields().toString()) + " / " + escape(actual_.getFields().toString());
+        }
+        if (!expected_.getMethods().equals(actual_.getMethods())) {
+            return "methods: " + escape(expected_.getMethods().toString()) + " / " + escape(actual_.getMethods().toString());
+        }
+        if (!expected_.getComments().equals(actual_.getComments())) {
+            return "comments: \"" + escape(expected_.getComments()) + "\" / \"" + escape(actual_.getComments()) + "\"";
+        }
+        if (!expected_.toString().equals(actual_.toString())) {
+            return "source";
+        }
+        return null;
+    }
+
+
+    /**
+     * Show line ends and tabs of a text.
+     *
+     * @param text_
+     *            the text, or null
+     * @return the text on one line
+     */
+    private static String escape(String text_) {
+        if (text_ == null) {
+            return "null";
+        }
+        return text_.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t");
+    }
+}
@@ -0,0 +1,31 @@
+#!/bin/sh
+#
+# Builds the UxfParser distribution in this directory:
+#   uxfparser.jar  runnable jar (java -jar uxfparser.jar ...)
+#   uxfparser.jsa  AppCDS archive of the classes a run loads, from a training
+#                  run over sample/ (needs JDK 13 or later; skipped otherwise)
+# Rebuild the archive whenever the jar or the JDK changes; the launcher falls
+# back to normal class loading if the archive does not match.
+#
+set -e
+DIST=$(cd "$(dirname "$0")" && pwd)
+ROOT=$(dirname "$DIST")
+BUILD="$DIST/build"
+JAVA_BIN=${JAVA_HOME:+$JAVA_HOME/bin/}
+
+rm -rf "$BUILD" "$DIST/uxfparser.jar" "$DIST/uxfparser.jsa"
+mkdir -p "$BUILD/classes"
+# Quoted, javac splits argument file lines at spaces
+find "$ROOT/UxfParser/src" -name '*.java' | sed 's/.*/"&"/' > "$BUILD/sources.txt"
+"${JAVA_BIN}javac" -encoding UTF-8 -d "$BUILD/classes" @"$BUILD/sources.txt"
+"${JAVA_BIN}jar" --create --file "$DIST/uxfparser.jar" --manifest "$DIST/MANIFEST.MF" -C "$BUILD/classes" .
+echo "Built $DIST/uxfparser.jar"
+
+# Training run over the sample diagrams; the archive is written when the JVM exits
+if "${JAVA_BIN}java" -XX:ArchiveClassesAtExit="$BUILD/probe.jsa" -version > /dev/null 2>&1; then
+    "${JAVA_BIN}java" -XX:ArchiveClassesAtExit="$DIST/uxfparser.jsa" -Xlog:cds=off -Xlog:cds+dynamic=off \
+        -jar "$DIST/uxfparser.jar" --log-level warn --batch "$DIST/sample" "$BUILD/training" com.example "java.util;.library.model"
+    echo "Built $DIST/uxfparser.jsa"
+else
+    echo "No AppCDS archive: this JDK cannot write dynamic archives (JDK 13 or later needed)"
+fi
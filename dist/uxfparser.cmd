@@ -0,0 +1,16 @@
+@echo off
+rem Runs UxfParser from uxfparser.jar with the AppCDS archive uxfparser.jsa when
+rem there is one (see build.sh), e.g.
+rem   dist\uxfparser "C:\uxf\collar.uxf" "C:\src" "com.mycom.myapp" ".myutils;java.util"
+rem -Xshare:auto falls back to normal class loading if the archive was built by
+rem another JDK or for another jar. Set UXFPARSER_OPTS for more JVM options.
+setlocal
+set "DIST=%~dp0"
+set "JAVA=java"
+if defined JAVA_HOME set "JAVA=%JAVA_HOME%\bin\java"
+rem The archive path is quoted on its own, DIST may have spaces (C:\Program Files)
+if not exist "%DIST%uxfparser.jsa" goto nocds
+"%JAVA%" "-XX:SharedArchiveFile=%DIST%uxfparser.jsa" -Xshare:auto -Xlog:cds=off -Xlog:cds+dynamic=off -XX:TieredStopAtLevel=1 %UXFPARSER_OPTS% -jar "%DIST%uxfparser.jar" %*
+exit /b %ERRORLEVEL%
+:nocds
+"%JAVA%" -XX:TieredStopAtLevel=1 %UXFPARSER_OPTS% -jar "%DIST%uxfparser.jar" %*